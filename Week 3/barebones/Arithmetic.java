@@ -0,0 +1,272 @@
+package barebones;
+
+import java.math.BigInteger;
+
+/**
+ * This does the arithmetic of the long and big numeric modes while a program runs.
+ *
+ * <p>Values are kept as primitive longs, and every result is checked for overflow. In the long mode
+ * an overflow stops the program with an error. In the big mode the variable it happened to is moved
+ * into the State's BigInteger registers, and moves back once its value fits in a long again, so
+ * programs whose values stay small never create a BigInteger.
+ *
+ * <p>The static methods taking a line are called by code compiled in the long mode.
+ */
+final class Arithmetic {
+  private Arithmetic() {
+  }
+
+  /**
+   * This runs an arithmetic instruction in the long or big mode.
+   *
+   * @param instruction Instruction to perform, operand a is the variable it is performed on
+   * @param state       Variables used by the program
+   */
+  static void basic(Instruction instruction, State state) {
+    if (instruction.define) {
+      state.define(instruction);
+    }
+    calculate(instruction.aSlot, instruction.line, instruction.opcode, instruction.bSlot, instruction.bValue, state);
+  }
+
+  /**
+   * This takes the amount from the counter of a decr end, in the long or big mode.
+   *
+   * @param instruction Decr end instruction
+   * @param state       Variables used by the program
+   */
+  static void decrement(Instruction instruction, State state) {
+    calculate(instruction.aSlot, instruction.line, Opcode.DECR, -1, instruction.immediate, state);
+  }
+
+  /**
+   * This works out and stores the result of arithmetic on a variable, such as an element of an
+   * array.
+   *
+   * @param identifier Slot of the variable
+   * @param line       Line number in the source file, for the error
+   * @param opcode     Arithmetic to do
+   * @param slot       Slot of the operand, or -1 if it is a literal
+   * @param literal    Value of the operand if it is a literal
+   * @param state      Variables used by the program
+   */
+  static void calculate(int identifier, int line, Opcode opcode, int slot, long literal, State state) {
+    if (opcode == Opcode.CLEAR) {
+      store(state, identifier, 0);
+      return;
+    }
+    long[] values = state.values;
+    BigInteger[] big = state.big;
+
+    if (big == null || (big[identifier] == null && (slot == -1 || big[slot] == null))) {
+      long value = values[identifier];
+      long operand = slot == -1 ? literal : values[slot];
+      if (opcode == Opcode.SET) {
+        values[identifier] = operand;
+        return;
+      }
+      long result = apply(opcode, value, operand);
+      if (!overflows(opcode, value, operand, result)) {
+        values[identifier] = result;
+        return;
+      }
+      if (big == null) {
+        throw overflow(line);
+      }
+    }
+
+    //At least one value is too large for a long
+    BigInteger operand = slot == -1 ? BigInteger.valueOf(literal) : get(state, slot);
+    if (opcode == Opcode.SET) {
+      store(state, identifier, operand);
+      return;
+    }
+    if ((opcode == Opcode.DIV || opcode == Opcode.MOD) && operand.signum() == 0) {
+      throw new ArithmeticException("/ by zero");
+    }
+    BigInteger value = get(state, identifier);
+    store(state, identifier, switch (opcode) {
+      case INCR -> value.add(operand);
+      case DECR -> value.subtract(operand);
+      case MULT -> value.multiply(operand);
+      case DIV -> value.divide(operand);
+      default -> value.remainder(operand);
+    });
+  }
+
+  /**
+   * This compares two operands in the big mode, either of which could be a BigInteger.
+   *
+   * @param aSlot  Slot of the first operand, or -1 if it is a literal
+   * @param aValue Value of the first operand if it is a literal
+   * @param bSlot  Slot of the second operand, or -1 if it is a literal
+   * @param bValue Value of the second operand if it is a literal
+   * @param state  Variables used by the program
+   * @return Negative, zero or positive as the first operand is less than, equal to or greater than
+   *     the second
+   */
+  static int compare(int aSlot, long aValue, int bSlot, long bValue, State state) {
+    BigInteger[] big = state.big;
+    boolean aBig = aSlot != -1 && big[aSlot] != null;
+    boolean bBig = bSlot != -1 && big[bSlot] != null;
+    if (!aBig && !bBig) {
+      return Long.compare(aSlot == -1 ? aValue : state.values[aSlot], bSlot == -1 ? bValue : state.values[bSlot]);
+    }
+    BigInteger a = aSlot == -1 ? BigInteger.valueOf(aValue) : get(state, aSlot);
+    BigInteger b = bSlot == -1 ? BigInteger.valueOf(bValue) : get(state, bSlot);
+    return a.compareTo(b);
+  }
+
+  /**
+   * This gets the value of a variable in the big mode as a BigInteger.
+   *
+   * @param state Variables used by the program
+   * @param slot  Slot of the variable
+   * @return The value
+   */
+  static BigInteger get(State state, int slot) {
+    BigInteger value = state.big[slot];
+    return value != null ? value : BigInteger.valueOf(state.values[slot]);
+  }
+
+  /**
+   * This stores a value in the big mode, as a long if it fits.
+   *
+   * @param state Variables used by the program
+   * @param slot  Slot of the variable
+   * @param value Value to store
+   */
+  private static void store(State state, int slot, BigInteger value) {
+    if (value.bitLength() < Long.SIZE) {
+      store(state, slot, value.longValue());
+    } else {
+      state.big[slot] = value;
+    }
+  }
+
+  /**
+   * This stores a value which fits in a long.
+   *
+   * @param state Variables used by the program
+   * @param slot  Slot of the variable
+   * @param value Value to store
+   */
+  private static void store(State state, int slot, long value) {
+    state.values[slot] = value;
+    if (state.big != null) {
+      state.big[slot] = null;
+    }
+  }
+
+  /**
+   * This works out arithmetic on two longs, wrapping on overflow.
+   *
+   * @param opcode  Arithmetic to do
+   * @param value   Value of the variable
+   * @param operand Value of the operand
+   * @return The result
+   */
+  static long apply(Opcode opcode, long value, long operand) {
+    return switch (opcode) {
+      case INCR -> value + operand;
+      case DECR -> value - operand;
+      case MULT -> value * operand;
+      case DIV -> value / operand;
+      case MOD -> value % operand;
+      case CLEAR -> 0;
+      default -> operand;
+    };
+  }
+
+  /**
+   * This checks if arithmetic on two longs overflowed, using the wrapped result.
+   *
+   * @param opcode  Arithmetic done
+   * @param value   Value of the variable
+   * @param operand Value of the operand
+   * @param result  Wrapped result
+   * @return True if the real result does not fit in a long
+   */
+  static boolean overflows(Opcode opcode, long value, long operand, long result) {
+    return switch (opcode) {
+      case INCR -> ((value ^ result) & (operand ^ result)) < 0;
+      case DECR -> ((value ^ operand) & (value ^ result)) < 0;
+      case MULT -> Math.multiplyHigh(value, operand) != (result >> 63);
+      case DIV -> value == Long.MIN_VALUE && operand == -1;
+      default -> false;
+    };
+  }
+
+  /**
+   * This creates the error for a value which is too large in the long mode.
+   *
+   * @param line Line number in the source file
+   * @return The error
+   */
+  static ArithmeticException overflow(int line) {
+    return new ArithmeticException("Overflow: value too large for a long on line " + line);
+  }
+
+  /**
+   * This adds two longs for compiled code, stopping on overflow.
+   *
+   * @param value   Value of the variable
+   * @param operand Value of the operand
+   * @param line    Line number in the source file
+   * @return The result
+   */
+  static long incr(long value, long operand, int line) {
+    long result = value + operand;
+    if (((value ^ result) & (operand ^ result)) < 0) {
+      throw overflow(line);
+    }
+    return result;
+  }
+
+  /**
+   * This subtracts two longs for compiled code, stopping on overflow.
+   *
+   * @param value   Value of the variable
+   * @param operand Value of the operand
+   * @param line    Line number in the source file
+   * @return The result
+   */
+  static long decr(long value, long operand, int line) {
+    long result = value - operand;
+    if (((value ^ operand) & (value ^ result)) < 0) {
+      throw overflow(line);
+    }
+    return result;
+  }
+
+  /**
+   * This multiplies two longs for compiled code, stopping on overflow.
+   *
+   * @param value   Value of the variable
+   * @param operand Value of the operand
+   * @param line    Line number in the source file
+   * @return The result
+   */
+  static long mult(long value, long operand, int line) {
+    long result = value * operand;
+    if (Math.multiplyHigh(value, operand) != (result >> 63)) {
+      throw overflow(line);
+    }
+    return result;
+  }
+
+  /**
+   * This divides two longs for compiled code, stopping on overflow.
+   *
+   * @param value   Value of the variable
+   * @param operand Value of the operand
+   * @param line    Line number in the source file
+   * @return The result
+   */
+  static long div(long value, long operand, int line) {
+    if (value == Long.MIN_VALUE && operand == -1) {
+      throw overflow(line);
+    }
+    return value / operand;
+  }
+}
@@ -0,0 +1,257 @@
+package barebones;
+
+import java.util.*;
+
+/**
+ * This stores the array used by an array instruction, and runs it.
+ *
+ * <p>An array is declared with {@code array A 10;}, and its elements are the variables
+ * {@code A[0]} to {@code A[9]}, which are given slots next to each other in the register file. An
+ * element chosen by a literal is an ordinary variable, so it can be used anywhere a variable can.
+ * An element chosen by a variable, such as {@code A[I]}, can be cleared, added to or subtracted
+ * from, or added to or subtracted from another variable, and its index is checked when it runs.
+ *
+ * <p>Whole arrays can be cleared, have a value added to, subtracted from or multiplied into each
+ * element, have another array of the same length added or subtracted element by element, and have
+ * the elements meeting a condition counted. These run over the array's range of the register file
+ * with {@link Bulk}, using the Vector API when the JVM has it. In the big numeric mode they are
+ * done one element at a time by {@link Arithmetic}.
+ *
+ * <p>An array's elements are all created at once, the first time any of them is used, so they are
+ * together and in order in the order variables were created, as the library returns them.
+ */
+final class ArrayOperation {
+  static final int LONGEST = 1 << 20; //Most elements an array can have
+  private static final Bulk BULK = bulk();
+
+  final String name; //Name of the array
+  final int length; //Number of elements
+  final int base; //Slot of the first element, -1 if not resolved
+  final Opcode arithmetic; //Arithmetic done on each element or the element chosen, otherwise null
+  final String index; //Variable choosing the element, or null for the whole array
+  final int indexSlot; //Slot of that variable, -1 if there is none or it is not resolved
+  final String other; //Array whose elements are the operand of arithmetic on a whole array, or null
+  final int otherBase; //Slot of its first element, -1 if there is none or it is not resolved
+
+  /**
+   * This creates the array used by an instruction.
+   *
+   * @param name       Name of the array
+   * @param length     Number of elements
+   * @param arithmetic Arithmetic done on each element or the element chosen, or null
+   * @param index      Variable choosing the element, or null for the whole array
+   * @param other      Array whose elements are the operand, or null
+   */
+  ArrayOperation(String name, int length, Opcode arithmetic, String index, String other) {
+    this(name, length, -1, arithmetic, index, -1, other, -1);
+  }
+
+  /**
+   * This creates the array used by an instruction with every field given, as read back by the
+   * {@link ProgramCache}.
+   */
+  ArrayOperation(String name, int length, int base, Opcode arithmetic, String index, int indexSlot,
+                 String other, int otherBase) {
+    this.name = name;
+    this.length = length;
+    this.base = base;
+    this.arithmetic = arithmetic;
+    this.index = index;
+    this.indexSlot = indexSlot;
+    this.other = other;
+    this.otherBase = otherBase;
+  }
+
+  /**
+   * This picks how whole arrays are worked on. The Vector API is only used if the JVM was started
+   * with its module, and its class was compiled, which plain javac does not do.
+   *
+   * @return The vector version if it can be loaded, otherwise the scalar one
+   */
+  private static Bulk bulk() {
+    if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      try {
+        return (Bulk) Class.forName("barebones.VectorBulk").getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException | LinkageError e) {
+        //Not compiled, so the scalar version is used
+      }
+    }
+    return new ScalarBulk();
+  }
+
+  /**
+   * This gets the name of an element chosen by a literal, which is the name of its variable.
+   *
+   * @param array Name of the array
+   * @param index Index of the element
+   * @return The name of the element
+   */
+  static String element(String array, int index) {
+    return array + "[" + index + "]";
+  }
+
+  /**
+   * This creates the error for a line which uses an array in a way which is not supported.
+   *
+   * @param text    Line of code
+   * @param line    Line number in the source file
+   * @param problem What is wrong with it
+   * @return The error to throw
+   */
+  static IllegalArgumentException error(String text, int line, String problem) {
+    return new IllegalArgumentException("Invalid Array: '" + text + "' on line " + line + " " + problem);
+  }
+
+  /**
+   * This gets how the element used is written, such as {@code A[I]}.
+   *
+   * @return The array and the variable choosing the element
+   */
+  String element() {
+    return name + "[" + index + "]";
+  }
+
+  /**
+   * This creates a copy with the variable choosing the element renamed, for a subroutine's
+   * parameters.
+   *
+   * @param renaming Variable passed for each parameter, by name
+   * @return The renamed copy
+   */
+  ArrayOperation rename(Map<String, String> renaming) {
+    if (index == null || !renaming.containsKey(index)) {
+      return this;
+    }
+    return new ArrayOperation(name, length, arithmetic, renaming.get(index), other);
+  }
+
+  /**
+   * This creates a copy with the arrays and the variable choosing the element resolved to slots.
+   *
+   * @param slots Slots given to each variable of the program, which already include the arrays
+   * @return The resolved copy
+   */
+  ArrayOperation resolve(Map<String, Integer> slots) {
+    return new ArrayOperation(name, length, slots.get(element(name, 0)), arithmetic, index,
+        index != null ? slots.get(index) : -1, other, other != null ? slots.get(element(other, 0)) : -1);
+  }
+
+  /**
+   * This runs an array instruction. Its variables are created first, then the array's elements.
+   *
+   * @param instruction Instruction using this array
+   * @param state       Variables used by the program
+   * @throws ArithmeticException An element chosen is outside the array, or a result overflowed in
+   *                             the long mode
+   */
+  void apply(Instruction instruction, State state) {
+    if (instruction.define) {
+      state.define(instruction);
+      state.define(indexSlot);
+    }
+    state.define(base);
+    state.define(otherBase);
+
+    switch (instruction.opcode) {
+      case EACH -> each(instruction, state);
+      case COUNT -> Arithmetic.calculate(instruction.aSlot, instruction.line, Opcode.SET, -1,
+          count(instruction, state), state);
+      case STORE -> arithmetic(element(instruction, state), instruction.bSlot, instruction.bValue, instruction, state);
+      case LOAD -> arithmetic(instruction.aSlot, element(instruction, state), 0, instruction, state);
+      default -> {
+      }
+    }
+  }
+
+  /**
+   * This does arithmetic on every element.
+   *
+   * @param instruction Instruction using this array, whose second operand is the value used if
+   *                    there is no other array
+   * @param state       Variables used by the program
+   */
+  private void each(Instruction instruction, State state) {
+    long[] values = state.values;
+    if (state.big != null) {
+      for (int i = 0; i < length; i++) {
+        Arithmetic.calculate(base + i, instruction.line, arithmetic,
+            other != null ? otherBase + i : instruction.bSlot, instruction.bValue, state);
+      }
+      return;
+    }
+    if (arithmetic == Opcode.CLEAR) {
+      Arrays.fill(values, base, base + length, 0);
+      return;
+    }
+
+    boolean wrap = state.program.numbers == Numbers.INT;
+    long value = instruction.bSlot == -1 ? instruction.bValue : values[instruction.bSlot];
+    boolean overflowed = switch (arithmetic) {
+      case INCR -> other != null ? BULK.addArray(values, base, otherBase, length, wrap)
+          : BULK.add(values, base, length, value, wrap);
+      case DECR -> other != null ? BULK.subtractArray(values, base, otherBase, length, wrap)
+          : BULK.subtract(values, base, length, value, wrap);
+      default -> BULK.multiply(values, base, length, value, wrap);
+    };
+    if (overflowed) {
+      throw Arithmetic.overflow(instruction.line);
+    }
+  }
+
+  /**
+   * This counts the elements meeting the condition of a count instruction.
+   *
+   * @param instruction Count instruction, whose second operand is compared with each element
+   * @param state       Variables used by the program
+   * @return Number of elements meeting the condition
+   */
+  private int count(Instruction instruction, State state) {
+    if (state.big != null) {
+      int count = 0;
+      for (int i = 0; i < length; i++) {
+        if (instruction.operator.test(Arithmetic.compare(base + i, 0, instruction.bSlot, instruction.bValue, state))) {
+          count++;
+        }
+      }
+      return count;
+    }
+    long value = instruction.bSlot == -1 ? instruction.bValue : state.values[instruction.bSlot];
+    return BULK.count(state.values, base, length, instruction.operator, value);
+  }
+
+  /**
+   * This finds the slot of the element chosen by the index variable, checking it is in the array.
+   *
+   * @param instruction Instruction using this array
+   * @param state       Variables used by the program
+   * @return Slot of the element
+   * @throws ArithmeticException The index is outside the array
+   */
+  int element(Instruction instruction, State state) {
+    long value = state.values[indexSlot];
+    if ((state.big != null && state.big[indexSlot] != null) || value < 0 || value >= length) {
+      throw new ArithmeticException("Index Out Of Range: " + element() + " with " + index + " = "
+          + state.value(indexSlot) + " on line " + instruction.line + ", where " + name + " has "
+          + length + " elements");
+    }
+    return base + (int) value;
+  }
+
+  /**
+   * This does the arithmetic of a store or load on one variable.
+   *
+   * @param identifier  Slot of the variable changed
+   * @param slot        Slot of the operand, or -1 if it is a literal
+   * @param literal     Value of the operand if it is a literal
+   * @param instruction Instruction using this array
+   * @param state       Variables used by the program
+   */
+  private void arithmetic(int identifier, int slot, long literal, Instruction instruction, State state) {
+    if (state.program.numbers == Numbers.INT) {
+      long[] values = state.values;
+      values[identifier] = (int) Arithmetic.apply(arithmetic, values[identifier], slot == -1 ? literal : values[slot]);
+    } else {
+      Arithmetic.calculate(identifier, instruction.line, arithmetic, slot, literal, state);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package barebones;
+
+import java.util.List;
+
+/**
+ * This is the library interface to the interpreter, for programs which run bare bones code.
+ * A program is compiled once and can then be run any number of times, from any number of threads,
+ * with no parsing and no shared variables between runs:
+ *
+ * <pre>{@code
+ * Program program = BareBones.compile(source);
+ * Map<String, Number> variables = program.run(Map.of("X", 5L));
+ * }</pre>
+ */
+public final class BareBones {
+  private BareBones() {
+  }
+
+  /**
+   * This compiles a program with the default options, optimised and using the interpreter.
+   *
+   * @param source Program code, with one statement on each line
+   * @return The compiled program
+   * @throws IllegalArgumentException The program is not valid
+   */
+  public static Program compile(String source) {
+    return compile(source, new Options());
+  }
+
+  /**
+   * This compiles a program with options, which can be read from commandline style arguments with
+   * {@link Options#parse(String[])}.
+   *
+   * @param source  Program code, with one statement on each line
+   * @param options Options choosing the optimisations, numeric mode and engine
+   * @return The compiled program
+   * @throws IllegalArgumentException The program is not valid
+   */
+  public static Program compile(String source, Options options) {
+    return Program.compile(List.of(source.split("\\R")), options);
+  }
+}
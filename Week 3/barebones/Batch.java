@@ -0,0 +1,254 @@
+package barebones;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * This runs many programs without prompting, for scripts and marking.
+ * Programs are given as directories, whose .txt files are all run, or as manifests listing one
+ * program file on each line. They are run on a fixed pool of worker threads, one for each core by
+ * default, and the result of each is written as a line of JSON as soon as it finishes.
+ *
+ * <p>Each result has the file, a status of ok, invalid (the program could not be compiled), error
+ * (it stopped while running), limit (it was stopped by --max-steps or --time-limit) or unreadable,
+ * the time taken in milliseconds, and the final variables, in the order they were created, or the
+ * error message. A program stopped by a limit has both, so one program cannot hold up the rest.
+ */
+public final class Batch {
+  private final Options options;
+  private final int workers;
+
+  /**
+   * This creates a batch run.
+   *
+   * @param options Options used for every program
+   * @param workers Number of programs run at once
+   */
+  Batch(Options options, int workers) {
+    this.options = options;
+    this.workers = workers;
+  }
+
+  /**
+   * This is used to get commandline inputs and start the batch.
+   *
+   * @param args Directories and manifests of programs to run, --workers=N to set the number of
+   *             programs run at once, and any of the interpreter's options
+   */
+  public static void main(String[] args) {
+    List<String> inputs = new ArrayList<>();
+    List<String> rest = new ArrayList<>();
+    int workers = Runtime.getRuntime().availableProcessors();
+
+    try {
+      for (String arg : args) {
+        if (arg.matches("^--workers=[1-9][0-9]*$")) {
+          workers = Integer.parseInt(arg.substring("--workers=".length()));
+        } else if (arg.startsWith("--")) {
+          rest.add(arg);
+        } else {
+          inputs.add(arg);
+        }
+      }
+      if (inputs.isEmpty()) {
+        throw new IllegalArgumentException("Usage: java barebones.Batch [--workers=N] [options] <directory|manifest>...");
+      }
+      Options options = Options.parse(rest.toArray(new String[0]));
+
+      List<Path> files = new ArrayList<>();
+      for (String input : inputs) {
+        files.addAll(programs(Paths.get(input)));
+      }
+
+      Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+      new Batch(options, workers).run(files, out);
+      out.flush();
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.exit(1);
+    } catch (IOException e) {
+      System.out.println("Unable to read input: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * This finds the program files given by a directory or a manifest.
+   * Lines of a manifest which are blank or start with # are skipped, and paths in it are relative to
+   * the manifest.
+   *
+   * @param input Directory or manifest
+   * @return The program files, in name order for a directory
+   * @throws IOException Reading the directory or manifest gone wrong
+   */
+  static List<Path> programs(Path input) throws IOException {
+    if (Files.isDirectory(input)) {
+      try (Stream<Path> paths = Files.walk(input)) {
+        return paths.filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".txt"))
+            .sorted()
+            .toList();
+      }
+    }
+    if (!Files.isRegularFile(input)) {
+      throw new IllegalArgumentException("Invalid Input: " + input);
+    }
+
+    List<Path> files = new ArrayList<>();
+    Path directory = input.toAbsolutePath().getParent();
+    for (String line : Files.readAllLines(input)) {
+      line = line.trim();
+      if (!line.isEmpty() && !line.startsWith("#")) {
+        files.add(directory.resolve(line).normalize());
+      }
+    }
+    return files;
+  }
+
+  /**
+   * This runs every program on the worker pool, writing each result as it finishes.
+   *
+   * @param files Program files to run
+   * @param out   Used to write a line of JSON for each result
+   * @throws IOException Writing a result gone wrong
+   */
+  void run(List<Path> files, Writer out) throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, Math.max(files.size(), 1)), runnable -> {
+      Thread thread = new Thread(runnable, "batch-worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    CompletionService<String> results = new ExecutorCompletionService<>(pool);
+
+    try {
+      for (Path file : files) {
+        results.submit(() -> job(file));
+      }
+      for (int i = 0; i < files.size(); i++) {
+        out.write(results.take().get());
+        out.write('\n');
+        out.flush();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * This compiles and runs one program.
+   *
+   * @param file Program file
+   * @return The result as a line of JSON
+   */
+  String job(Path file) {
+    return result("file", quote(file.toString()), () -> Program.compile(Files.readAllLines(file), options));
+  }
+
+  /**
+   * This is used to compile a program for a result.
+   */
+  interface Source {
+    /**
+     * This compiles the program.
+     *
+     * @return The compiled program
+     * @throws IOException Reading the program gone wrong
+     */
+    Program compile() throws IOException;
+  }
+
+  /**
+   * This compiles and runs a program, timing it and writing its status and variables or error.
+   *
+   * @param key    Name of the field identifying the program
+   * @param value  JSON value identifying the program
+   * @param source Used to compile the program
+   * @return The result as a line of JSON
+   */
+  static String result(String key, String value, Source source) {
+    long start = System.nanoTime();
+    String status;
+    String body;
+
+    try {
+      Result result = source.compile().execute(Map.of());
+      if (result.finished()) {
+        status = "ok";
+        body = "\"variables\":" + json(result.variables());
+      } else {
+        status = "limit";
+        body = "\"error\":" + quote(Result.message(result.status(), result.steps()))
+            + ",\"variables\":" + json(result.variables());
+      }
+    } catch (IOException | UncheckedIOException e) {
+      status = "unreadable";
+      body = "\"error\":" + quote("Unable to read file: " + e.getMessage());
+    } catch (IllegalArgumentException e) {
+      status = "invalid";
+      body = "\"error\":" + quote(String.valueOf(e.getMessage()));
+    } catch (Throwable e) {
+      //Any other failure, even an Error such as running out of memory, only fails this program
+      if (Thread.currentThread().isInterrupted()) {
+        throw e;
+      }
+      status = "error";
+      body = "\"error\":" + quote(String.valueOf(e.getMessage()));
+    }
+
+    double millis = (System.nanoTime() - start) / 1e6;
+    return "{" + quote(key) + ":" + value + ",\"status\":\"" + status + "\""
+        + String.format(Locale.ROOT, ",\"millis\":%.3f,", millis) + body + "}";
+  }
+
+  /**
+   * This writes the variables as a JSON object, keeping their order.
+   *
+   * @param variables Dictionary of variables
+   * @return The JSON object
+   */
+  static String json(Map<String, Number> variables) {
+    StringBuilder json = new StringBuilder("{");
+    for (Map.Entry<String, Number> variable : variables.entrySet()) {
+      if (json.length() > 1) {
+        json.append(',');
+      }
+      json.append(quote(variable.getKey())).append(':').append(variable.getValue());
+    }
+    return json.append('}').toString();
+  }
+
+  /**
+   * This writes a string as a JSON string, escaping anything which needs it.
+   *
+   * @param text Text to write
+   * @return The quoted text
+   */
+  static String quote(String text) {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '"' -> quoted.append("\\\"");
+        case '\\' -> quoted.append("\\\\");
+        case '\n' -> quoted.append("\\n");
+        case '\r' -> quoted.append("\\r");
+        case '\t' -> quoted.append("\\t");
+        default -> {
+          if (c < 0x20) {
+            quoted.append(String.format("\\u%04x", (int) c));
+          } else {
+            quoted.append(c);
+          }
+        }
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
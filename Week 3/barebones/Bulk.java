@@ -0,0 +1,87 @@
+package barebones;
+
+/**
+ * This does arithmetic on every element of an array at once, in the int and long numeric modes.
+ *
+ * <p>An array's elements are next to each other in the register file, so each method works on a
+ * range of it. In the int mode every result wraps like an int. In the long mode nothing wraps, and
+ * a method returns true if any result was too large for a long, in which case the program stops
+ * with an error and the elements it changed do not matter.
+ *
+ * <p>{@link ScalarBulk} works on one element at a time. When the JVM has the incubating Vector
+ * API, {@code VectorBulk} works on as many elements at once as the processor's vector registers
+ * hold.
+ */
+interface Bulk {
+  /**
+   * This adds a value to every element.
+   *
+   * @param values Register file
+   * @param base   Slot of the first element
+   * @param length Number of elements
+   * @param value  Value to add
+   * @param wrap   True in the int mode, to wrap each result like an int
+   * @return True if a result overflowed a long
+   */
+  boolean add(long[] values, int base, int length, long value, boolean wrap);
+
+  /**
+   * This subtracts a value from every element.
+   *
+   * @param values Register file
+   * @param base   Slot of the first element
+   * @param length Number of elements
+   * @param value  Value to subtract
+   * @param wrap   True in the int mode, to wrap each result like an int
+   * @return True if a result overflowed a long
+   */
+  boolean subtract(long[] values, int base, int length, long value, boolean wrap);
+
+  /**
+   * This multiplies every element by a value.
+   *
+   * @param values Register file
+   * @param base   Slot of the first element
+   * @param length Number of elements
+   * @param value  Value to multiply by
+   * @param wrap   True in the int mode, to wrap each result like an int
+   * @return True if a result overflowed a long
+   */
+  boolean multiply(long[] values, int base, int length, long value, boolean wrap);
+
+  /**
+   * This adds the elements of another array to the elements with the same index.
+   *
+   * @param values Register file
+   * @param base   Slot of the first element changed
+   * @param other  Slot of the first element added, which may be the same array
+   * @param length Number of elements in each array
+   * @param wrap   True in the int mode, to wrap each result like an int
+   * @return True if a result overflowed a long
+   */
+  boolean addArray(long[] values, int base, int other, int length, boolean wrap);
+
+  /**
+   * This subtracts the elements of another array from the elements with the same index.
+   *
+   * @param values Register file
+   * @param base   Slot of the first element changed
+   * @param other  Slot of the first element subtracted, which may be the same array
+   * @param length Number of elements in each array
+   * @param wrap   True in the int mode, to wrap each result like an int
+   * @return True if a result overflowed a long
+   */
+  boolean subtractArray(long[] values, int base, int other, int length, boolean wrap);
+
+  /**
+   * This counts the elements meeting a condition.
+   *
+   * @param values     Register file
+   * @param base       Slot of the first element
+   * @param length     Number of elements
+   * @param comparison Comparison between each element and the value
+   * @param value      Value each element is compared with
+   * @return Number of elements for which the comparison is true
+   */
+  int count(long[] values, int base, int length, Comparison comparison, long value);
+}
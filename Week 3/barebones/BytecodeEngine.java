@@ -0,0 +1,413 @@
+package barebones;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+
+/**
+ * This is the bytecode backend of the interpreter.
+ * It compiles a program, or part of one, into a JVM method on a hidden class, so it can be run as
+ * native code once the JIT has compiled it.
+ *
+ * <p>Each variable used becomes a long local, loaded from the register file when the method starts
+ * and stored back when it finishes. While loops and if statements become branches. Arithmetic is
+ * narrowed to an int after every step, so results match the interpreter exactly. In the long
+ * numeric mode, arithmetic which could overflow calls the checked methods in {@link Arithmetic}
+ * instead. The big numeric mode is not compiled.
+ *
+ * <p>Summarised loops and array instructions are run by the {@link State}, after storing the locals
+ * they use back into the register file.
+ *
+ * <p>When runs have a step or time limit, take checkpoints or are split into regions, each back
+ * edge calls {@link State#tick} and leaves the method if a limit has been reached or a checkpoint
+ * is due, storing the locals back first. Otherwise nothing is added, so the check costs nothing.
+ *
+ * <p>The JIT does not compile methods over 8000 bytes by default, so very large programs run
+ * faster in the tiered mode, which compiles each hot loop separately.
+ */
+final class BytecodeEngine {
+  private static final String STATE = "barebones/State";
+  private static final String ARITHMETIC = "barebones/Arithmetic";
+  private static final MethodType TYPE = MethodType.methodType(void.class, State.class);
+
+  private BytecodeEngine() {
+  }
+
+  /**
+   * This runs a compiled method.
+   *
+   * @param method Method returned by compile
+   * @param state  Variables used by the program
+   */
+  static void invoke(MethodHandle method, State state) {
+    try {
+      method.invokeExact(state);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * This compiles the instructions between two addresses into a method taking the program's State.
+   * Any jump out of the range ends the method, so the range must be whole blocks.
+   *
+   * @param program Program to compile
+   * @param from    Address of the first instruction to compile
+   * @param to      Address after the last instruction to compile
+   * @param checked True to check the limits and checkpoints at each back edge
+   * @return Handle to the compiled method
+   * @throws IllegalStateException The range is too large to compile
+   */
+  static MethodHandle compile(Program program, int from, int to, boolean checked) {
+    Events.Bytecode event = Events.recording() ? new Events.Bytecode() : null;
+    if (event != null) {
+      event.begin();
+    }
+    Instruction[] instructions = program.instructions;
+    boolean exact = program.numbers == Numbers.LONG;
+    ClassAssembler asm = new ClassAssembler("barebones/BareBones");
+
+    //Gives each variable used a long local, after the State and register file
+    Map<Integer, Integer> locals = new TreeMap<>();
+    for (int i = from; i < to; i++) {
+      for (int slot : slots(instructions[i])) {
+        if (slot != -1 && !locals.containsKey(slot)) {
+          locals.put(slot, 2 + 2 * locals.size());
+        }
+      }
+    }
+    List<String> types = new ArrayList<>(List.of(STATE, "[J"));
+    types.addAll(Collections.nCopies(locals.size(), "J"));
+
+    asm.local(ClassAssembler.ALOAD, 0);
+    asm.member(ClassAssembler.GETFIELD, STATE, "values", "[J");
+    asm.local(ClassAssembler.ASTORE, 1);
+    for (Map.Entry<Integer, Integer> local : locals.entrySet()) {
+      asm.local(ClassAssembler.ALOAD, 1);
+      asm.pushInt(local.getKey());
+      asm.op(ClassAssembler.LALOAD);
+      asm.local(ClassAssembler.LSTORE, local.getValue());
+    }
+
+    //Each address has a label for running it normally, and one for entering it after a failed condition
+    int[] start = new int[to - from + 1];
+    int[] entry = new int[to - from + 1];
+    for (int i = 0; i < start.length; i++) {
+      start[i] = asm.label();
+      entry[i] = asm.label();
+    }
+    int end = start[to - from];
+
+    for (int i = from; i < to; i++) {
+      Instruction instruction = instructions[i];
+      asm.bind(start[i - from]);
+
+      switch (instruction.opcode) {
+        case CLEAR -> {
+          define(asm, instruction);
+          asm.pushLong(0);
+          asm.local(ClassAssembler.LSTORE, locals.get(instruction.aSlot));
+        }
+
+        case INCR, DECR, MULT, DIV, MOD -> {
+          define(asm, instruction);
+          load(asm, locals, instruction.aSlot, instruction.aValue);
+          load(asm, locals, instruction.bSlot, instruction.bValue);
+          if (exact && instruction.opcode != Opcode.MOD) {
+            checked(asm, instruction.opcode, instruction.line);
+          } else {
+            asm.op(switch (instruction.opcode) {
+              case INCR -> ClassAssembler.LADD;
+              case DECR -> ClassAssembler.LSUB;
+              case MULT -> ClassAssembler.LMUL;
+              case DIV -> ClassAssembler.LDIV;
+              default -> ClassAssembler.LREM;
+            });
+            narrow(asm, exact);
+          }
+          asm.local(ClassAssembler.LSTORE, locals.get(instruction.aSlot));
+        }
+
+        //Leaves the loop when the variable meets the condition
+        case WHILE -> condition(asm, locals, instruction, Comparison.NE, target(start, end, from, to, instruction.jump));
+
+        case SET -> {
+          define(asm, instruction);
+          load(asm, locals, instruction.bSlot, instruction.bValue);
+          asm.local(ClassAssembler.LSTORE, locals.get(instruction.aSlot));
+        }
+
+        //Returns to the start of the body when the variable fails the condition
+        case END -> backEdge(asm, locals, instruction, i, checked, start[i + 1 - from], end,
+            target(start, end, from, to, instruction.jump));
+
+        case DECR_END -> {
+          asm.local(ClassAssembler.LLOAD, locals.get(instruction.aSlot));
+          asm.pushLong(instruction.immediate);
+          if (exact) {
+            checked(asm, Opcode.DECR, instruction.line);
+          } else {
+            asm.op(ClassAssembler.LSUB);
+            narrow(asm, false);
+          }
+          asm.local(ClassAssembler.LSTORE, locals.get(instruction.aSlot));
+          backEdge(asm, locals, instruction, i, checked, start[i + 1 - from], end,
+              target(start, end, from, to, instruction.jump));
+        }
+
+        case IF -> condition(asm, locals, instruction, instruction.operator, entry[instruction.jump - from]);
+
+        case ELSE_IF -> {
+          asm.jump(ClassAssembler.GOTO, target(start, end, from, to, instruction.exit));
+          asm.bind(entry[i - from]);
+          condition(asm, locals, instruction, instruction.operator, entry[instruction.jump - from]);
+        }
+
+        case ELSE -> {
+          asm.jump(ClassAssembler.GOTO, target(start, end, from, to, instruction.exit));
+          asm.bind(entry[i - from]);
+        }
+
+        case ENDIF -> asm.bind(entry[i - from]);
+
+        //Calls need the interpreter's call stack
+        case CALL, RETURN -> throw new IllegalStateException("Calls to subroutines which are not inlined are only supported by the interpreter");
+
+        //Summarised loops are run by the State, using the register file
+        case LOOP -> {
+          for (int slot : instruction.summary.slots) {
+            asm.local(ClassAssembler.ALOAD, 1);
+            asm.pushInt(slot);
+            asm.local(ClassAssembler.LLOAD, locals.get(slot));
+            asm.op(ClassAssembler.LASTORE);
+          }
+          asm.local(ClassAssembler.ALOAD, 0);
+          asm.pushInt(i);
+          asm.member(ClassAssembler.INVOKEVIRTUAL, STATE, "loop", "(I)V");
+          for (int slot : instruction.summary.slots) {
+            asm.local(ClassAssembler.ALOAD, 1);
+            asm.pushInt(slot);
+            asm.op(ClassAssembler.LALOAD);
+            asm.local(ClassAssembler.LSTORE, locals.get(slot));
+          }
+        }
+
+        //Array instructions are run by the State, using the register file, so any element in a local is stored first
+        case ARRAY, EACH, COUNT, STORE, LOAD -> {
+          List<Integer> used = used(instruction, locals);
+          for (int slot : used) {
+            asm.local(ClassAssembler.ALOAD, 1);
+            asm.pushInt(slot);
+            asm.local(ClassAssembler.LLOAD, locals.get(slot));
+            asm.op(ClassAssembler.LASTORE);
+          }
+          asm.local(ClassAssembler.ALOAD, 0);
+          asm.pushInt(i);
+          asm.member(ClassAssembler.INVOKEVIRTUAL, STATE, "array", "(I)V");
+          for (int slot : used) {
+            asm.local(ClassAssembler.ALOAD, 1);
+            asm.pushInt(slot);
+            asm.op(ClassAssembler.LALOAD);
+            asm.local(ClassAssembler.LSTORE, locals.get(slot));
+          }
+        }
+      }
+    }
+
+    //Stores the locals back into the register file
+    asm.bind(end);
+    for (Map.Entry<Integer, Integer> local : locals.entrySet()) {
+      asm.local(ClassAssembler.ALOAD, 1);
+      asm.pushInt(local.getKey());
+      asm.local(ClassAssembler.LLOAD, local.getValue());
+      asm.op(ClassAssembler.LASTORE);
+    }
+    asm.op(ClassAssembler.RETURN);
+
+    byte[] bytes = asm.build("run", TYPE.toMethodDescriptorString(), types, 6);
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+      MethodHandle method = lookup.findStatic(lookup.lookupClass(), "run", TYPE);
+      if (event != null && event.shouldCommit()) {
+        event.from = from;
+        event.to = to;
+        event.size = bytes.length;
+        event.commit();
+      }
+      return method;
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * This writes the condition of an end, returning to the start of the body when the variable
+   * fails it. When checked, the back edge is charged first, leaving the method if a limit is reached
+   * or a checkpoint is due, with the start of the body as the address to carry on from.
+   *
+   * @param asm         Assembler being written to
+   * @param locals      Local of each variable used
+   * @param instruction End instruction
+   * @param address     Address of the end
+   * @param checked     True to check the limits and checkpoints
+   * @param next        Label of the instruction after the end
+   * @param end         Label which stores the locals back and returns
+   * @param body        Label of the start of the loop body
+   */
+  private static void backEdge(ClassAssembler asm, Map<Integer, Integer> locals, Instruction instruction,
+                               int address, boolean checked, int next, int end, int body) {
+    if (!checked) {
+      condition(asm, locals, instruction, Comparison.EQ, body);
+      return;
+    }
+    int charge = asm.label();
+    condition(asm, locals, instruction, Comparison.EQ, charge);
+    asm.jump(ClassAssembler.GOTO, next);
+    asm.bind(charge);
+    asm.local(ClassAssembler.ALOAD, 0);
+    asm.pushInt(address - instruction.jump + 2);
+    asm.pushInt(instruction.jump);
+    asm.member(ClassAssembler.INVOKEVIRTUAL, STATE, "tick", "(II)Z");
+    asm.jump(ClassAssembler.IFNE, end);
+    asm.jump(ClassAssembler.GOTO, body);
+  }
+
+  /**
+   * This gets the slots of every variable an instruction uses.
+   *
+   * @param instruction Instruction to check
+   * @return The slots, which are -1 for literals
+   */
+  private static int[] slots(Instruction instruction) {
+    if (instruction.summary != null) {
+      return instruction.summary.slots;
+    }
+    if (instruction.array != null) {
+      return new int[]{instruction.aSlot, instruction.bSlot, instruction.array.indexSlot};
+    }
+    return new int[]{instruction.aSlot, instruction.bSlot};
+  }
+
+  /**
+   * This finds the locals an array instruction can read or change: its variables, and any element
+   * of its arrays which has a local.
+   *
+   * @param instruction Array instruction
+   * @param locals      Local of each variable used
+   * @return Slots of the locals
+   */
+  private static List<Integer> used(Instruction instruction, Map<Integer, Integer> locals) {
+    ArrayOperation array = instruction.array;
+    List<Integer> used = new ArrayList<>();
+    for (int slot : locals.keySet()) {
+      boolean element = (slot >= array.base && slot < array.base + array.length)
+          || (array.otherBase != -1 && slot >= array.otherBase && slot < array.otherBase + array.length);
+      if (element || slot == instruction.aSlot || slot == instruction.bSlot || slot == array.indexSlot) {
+        used.add(slot);
+      }
+    }
+    return used;
+  }
+
+  /**
+   * This finds the label for a jump, which is the end of the method if it leaves the range.
+   *
+   * @param start   Labels for each address
+   * @param end     Label for the end of the method
+   * @param from    Address of the first instruction compiled
+   * @param to      Address after the last instruction compiled
+   * @param address Address being jumped to
+   * @return The label to jump to
+   */
+  private static int target(int[] start, int end, int from, int to, int address) {
+    return address < from || address >= to ? end : start[address - from];
+  }
+
+  /**
+   * This writes the code to create the variables used by an instruction, if it needs to.
+   *
+   * @param asm         Assembler being written to
+   * @param instruction Instruction whose variables are being used
+   */
+  private static void define(ClassAssembler asm, Instruction instruction) {
+    if (instruction.define) {
+      for (int slot : new int[]{instruction.aSlot, instruction.bSlot}) {
+        if (slot != -1) {
+          asm.local(ClassAssembler.ALOAD, 0);
+          asm.pushInt(slot);
+          asm.member(ClassAssembler.INVOKEVIRTUAL, STATE, "define", "(I)V");
+        }
+      }
+    }
+  }
+
+  /**
+   * This writes the code to narrow the result on the stack to an int, in the int numeric mode.
+   *
+   * @param asm   Assembler being written to
+   * @param exact True in the long numeric mode, which does not narrow
+   */
+  private static void narrow(ClassAssembler asm, boolean exact) {
+    if (!exact) {
+      asm.op(ClassAssembler.L2I);
+      asm.op(ClassAssembler.I2L);
+    }
+  }
+
+  /**
+   * This writes a call to the method in {@link Arithmetic} which does arithmetic on the two longs on
+   * the stack, stopping with an error on overflow.
+   *
+   * @param asm    Assembler being written to
+   * @param opcode Arithmetic to do
+   * @param line   Line number in the source file, for the error
+   */
+  private static void checked(ClassAssembler asm, Opcode opcode, int line) {
+    asm.pushInt(line);
+    asm.member(ClassAssembler.INVOKESTATIC, ARITHMETIC, opcode.name().toLowerCase(), "(JJI)J");
+  }
+
+  /**
+   * This writes the code to push an operand, which is either a variable or a literal.
+   *
+   * @param asm     Assembler being written to
+   * @param locals  Local of each variable used
+   * @param slot    Slot of the variable, or -1 if the operand is a literal
+   * @param literal Value of the operand if it is a literal
+   */
+  private static void load(ClassAssembler asm, Map<Integer, Integer> locals, int slot, long literal) {
+    if (slot == -1) {
+      asm.pushLong(literal);
+    } else {
+      asm.local(ClassAssembler.LLOAD, locals.get(slot));
+    }
+  }
+
+  /**
+   * This writes the code to compare an instruction's operands and jump when the comparison fails.
+   *
+   * @param asm         Assembler being written to
+   * @param locals      Local of each variable used
+   * @param instruction Instruction whose operands are compared
+   * @param comparison  Comparison to make
+   * @param label       Label to jump to when the comparison is false
+   */
+  private static void condition(ClassAssembler asm, Map<Integer, Integer> locals, Instruction instruction,
+                                Comparison comparison, int label) {
+    define(asm, instruction);
+    load(asm, locals, instruction.aSlot, instruction.aValue);
+    load(asm, locals, instruction.bSlot, instruction.bValue);
+    asm.op(ClassAssembler.LCMP);
+    asm.jump(switch (comparison) {
+      case EQ -> ClassAssembler.IFNE;
+      case NE -> ClassAssembler.IFEQ;
+      case GT -> ClassAssembler.IFLE;
+      case LT -> ClassAssembler.IFGE;
+      case GE -> ClassAssembler.IFLT;
+      case LE -> ClassAssembler.IFGT;
+    }, label);
+  }
+}
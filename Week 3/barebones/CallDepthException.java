@@ -0,0 +1,20 @@
+package barebones;
+
+/**
+ * This is thrown when a program has too many calls to subroutines running at once, such as from
+ * recursion which never ends. It is kept apart from the arithmetic errors, since the program's
+ * values are not wrong, it has just run out of call stack.
+ */
+public final class CallDepthException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * This creates the error for a call which would go past the most calls running at once.
+   *
+   * @param calls Most calls which can be running at once
+   * @param line  Line number of the call in the source file
+   */
+  CallDepthException(int calls, int line) {
+    super("Stack Overflow: more than " + calls + " calls running on line " + line);
+  }
+}
@@ -0,0 +1,167 @@
+package barebones;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * This saves a running program to a file at a loop back edge, so it can be carried on from there
+ * later, in the same process or another one, with exactly the same result.
+ *
+ * <p>Jumps are linked before a program runs, so there are no loop or if stacks to save: a run is
+ * just the address it carries on from, its variables and the calls running. The file holds a hash
+ * of the compiled program, that address, each variable in the order it was created, with its value
+ * and its BigInteger value in the big numeric mode, and the address each call running returns to.
+ * A checkpoint can only be resumed by the same program compiled with the same options, which the
+ * hash checks.
+ *
+ * <p>Each checkpoint is written to a temporary file and moved over the last one, so a run killed
+ * while writing still leaves a whole checkpoint.
+ */
+final class Checkpoint {
+  static final int MAGIC = 0x42424b31; //"BBK1"
+  static final int VERSION = 2;
+  static final long EVERY = 5000; //Default milliseconds between checkpoints
+
+  private final Path file;
+  private final byte[] hash; //Hash of the compiled program
+
+  /**
+   * This creates checkpoints for a program.
+   *
+   * @param program Program being run
+   * @param file    File checkpoints are written to
+   */
+  Checkpoint(Program program, Path file) {
+    this.file = file;
+    hash = hash(program);
+  }
+
+  /**
+   * This hashes a compiled program, in the same form as the program cache stores it.
+   *
+   * @param program Compiled program
+   * @return SHA-256 hash
+   */
+  static byte[] hash(Program program) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+        out.writeByte(program.numbers.ordinal());
+        ProgramCache.writeProgram(out, program);
+      }
+      return digest.digest();
+    } catch (NoSuchAlgorithmException | IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * This writes a checkpoint, replacing the last one.
+   *
+   * @param state          Variables used by the program, all stored in the register file
+   * @param programCounter Address the run carries on from
+   * @throws IllegalStateException Writing the file gone wrong
+   */
+  void write(State state, int programCounter) {
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.write(hash);
+        out.writeInt(programCounter);
+        out.writeInt(state.count);
+        for (int i = 0; i < state.count; i++) {
+          int slot = state.order[i];
+          out.writeInt(slot);
+          out.writeLong(state.values[slot]);
+          BigInteger big = state.big != null ? state.big[slot] : null;
+          if (big == null) {
+            out.writeInt(-1);
+          } else {
+            byte[] bytes = big.toByteArray();
+            out.writeInt(bytes.length);
+            out.write(bytes);
+          }
+        }
+        out.writeInt(state.depth);
+        for (int i = 0; i < state.depth; i++) {
+          out.writeInt(state.calls[i]);
+        }
+      }
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write checkpoint: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * This reads a checkpoint into new variables.
+   *
+   * @param program Program being run
+   * @param file    Checkpoint to read
+   * @param state   Variables used by the program, none of which exist yet
+   * @return The address the run carries on from
+   * @throws IOException Reading the file gone wrong
+   * @throws IllegalArgumentException The file is not a checkpoint, or is from another program
+   */
+  static int restore(Program program, Path file, State state) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IllegalArgumentException("Invalid Checkpoint: " + file);
+      }
+      byte[] saved = new byte[32];
+      in.readFully(saved);
+      if (!Arrays.equals(saved, hash(program))) {
+        throw new IllegalArgumentException("Invalid Checkpoint: made by a different program or options");
+      }
+
+      int programCounter = in.readInt();
+      int count = in.readInt();
+      if (programCounter < 0 || programCounter > program.instructions.length
+          || count < 0 || count > program.names.length) {
+        throw new IllegalArgumentException("Invalid Checkpoint: " + file);
+      }
+      for (int i = 0; i < count; i++) {
+        int slot = in.readInt();
+        if (slot < 0 || slot >= program.names.length) {
+          throw new IllegalArgumentException("Invalid Checkpoint: " + file);
+        }
+        state.define(slot);
+        state.values[slot] = in.readLong();
+        int length = in.readInt();
+        if (length >= 0) {
+          byte[] bytes = new byte[length];
+          in.readFully(bytes);
+          if (state.big == null) {
+            throw new IllegalArgumentException("Invalid Checkpoint: " + file);
+          }
+          state.big[slot] = new BigInteger(bytes);
+        }
+      }
+      int depth = in.readInt();
+      if (depth < 0 || depth > State.CALLS) {
+        throw new IllegalArgumentException("Invalid Checkpoint: " + file);
+      }
+      state.calls = new int[depth];
+      for (int i = 0; i < depth; i++) {
+        int address = in.readInt();
+        if (address < 0 || address > program.instructions.length) {
+          throw new IllegalArgumentException("Invalid Checkpoint: " + file);
+        }
+        state.calls[i] = address;
+      }
+      state.depth = depth;
+      return programCounter;
+    } catch (EOFException e) {
+      throw new IllegalArgumentException("Invalid Checkpoint: " + file);
+    }
+  }
+}
@@ -0,0 +1,327 @@
+package barebones;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This is a small assembler for JVM class files, with just enough of the format to build a class
+ * holding a single static method.
+ *
+ * <p>Every local variable of the method must be stored before the first branch, and the operand
+ * stack must be empty at every branch, so a single frame describes the whole method. This is
+ * written into the stack map table for each branch target.
+ */
+final class ClassAssembler {
+  static final int LCONST_0 = 0x09, LCONST_1 = 0x0a, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13, LDC2_W = 0x14;
+  static final int LLOAD = 0x16, ALOAD = 0x19, LALOAD = 0x2f, LSTORE = 0x37, ASTORE = 0x3a, LASTORE = 0x50;
+  static final int LADD = 0x61, LSUB = 0x65, LMUL = 0x69, LDIV = 0x6d, LREM = 0x71, I2L = 0x85, L2I = 0x88;
+  static final int LCMP = 0x94, IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+  static final int GOTO = 0xa7, RETURN = 0xb1, GETFIELD = 0xb4, INVOKEVIRTUAL = 0xb6, INVOKESTATIC = 0xb8;
+  private static final int WIDE = 0xc4;
+
+  private final ByteArrayOutputStream pool = new ByteArrayOutputStream(); //Constant pool entries
+  private final Map<String, Integer> constants = new HashMap<>(); //Constant pool indexes by entry
+  private int poolSize = 1;
+
+  private final ByteArrayOutputStream code = new ByteArrayOutputStream(); //Method body
+  private final List<int[]> fixups = new ArrayList<>(); //{offset of branch, label} to fill in
+  private final List<Integer> labels = new ArrayList<>(); //Offset of each label, -1 if not bound
+  private final TreeSet<Integer> frames = new TreeSet<>(); //Offsets which need a stack map frame
+  private final String name;
+
+  /**
+   * This creates an assembler for a class.
+   *
+   * @param name Internal name of the class
+   */
+  ClassAssembler(String name) {
+    this.name = name;
+  }
+
+  /**
+   * This creates a label which can be jumped to before or after it is bound.
+   *
+   * @return The label
+   */
+  int label() {
+    labels.add(-1);
+    return labels.size() - 1;
+  }
+
+  /**
+   * This binds a label to the next instruction written.
+   *
+   * @param label Label to bind
+   */
+  void bind(int label) {
+    labels.set(label, code.size());
+  }
+
+  /**
+   * This writes an instruction without operands.
+   *
+   * @param opcode Instruction to write
+   */
+  void op(int opcode) {
+    code.write(opcode);
+    if (opcode == RETURN) {
+      frames.add(code.size());
+    }
+  }
+
+  /**
+   * This writes a conditional or unconditional branch to a label.
+   *
+   * @param opcode Branch instruction
+   * @param label  Label to jump to
+   */
+  void jump(int opcode, int label) {
+    fixups.add(new int[]{code.size(), label});
+    code.write(opcode);
+    u2(code, 0);
+    if (opcode == GOTO) {
+      frames.add(code.size());
+    }
+  }
+
+  /**
+   * This writes an instruction which pushes an int constant.
+   *
+   * @param value Value to push
+   */
+  void pushInt(int value) {
+    if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      code.write(BIPUSH);
+      code.write(value);
+    } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+      code.write(SIPUSH);
+      u2(code, value);
+    } else {
+      code.write(LDC_W);
+      u2(code, constant("I" + value, 3, out -> u4(out, value)));
+    }
+  }
+
+  /**
+   * This writes an instruction which pushes a long constant.
+   *
+   * @param value Value to push
+   */
+  void pushLong(long value) {
+    if (value == 0 || value == 1) {
+      code.write(value == 0 ? LCONST_0 : LCONST_1);
+    } else {
+      code.write(LDC2_W);
+      u2(code, constant("J" + value, 5, out -> {
+        u4(out, (int) (value >>> 32));
+        u4(out, (int) value);
+      }));
+    }
+  }
+
+  /**
+   * This writes an instruction which loads or stores a local variable.
+   *
+   * @param opcode Load or store instruction
+   * @param local  Index of the local variable
+   */
+  void local(int opcode, int local) {
+    if (local > 255) {
+      code.write(WIDE);
+      code.write(opcode);
+      u2(code, local);
+    } else {
+      code.write(opcode);
+      code.write(local);
+    }
+  }
+
+  /**
+   * This writes an instruction which uses a field or method.
+   *
+   * @param opcode     Field or invoke instruction
+   * @param owner      Internal name of the class it belongs to
+   * @param member     Name of the field or method
+   * @param descriptor Type descriptor of the field or method
+   */
+  void member(int opcode, String owner, String member, String descriptor) {
+    int tag = opcode == GETFIELD ? 9 : 10;
+    int nameAndType = constant("N" + member + descriptor, 12, out -> {
+      u2(out, utf8(member));
+      u2(out, utf8(descriptor));
+    });
+    int ref = constant(tag + owner + "." + member + descriptor, tag, out -> {
+      u2(out, classRef(owner));
+      u2(out, nameAndType);
+    });
+    code.write(opcode);
+    u2(code, ref);
+  }
+
+  /**
+   * This gives the size of the method body written so far.
+   *
+   * @return Size in bytes
+   */
+  int size() {
+    return code.size();
+  }
+
+  /**
+   * This builds the class file, with the method as a public static method.
+   *
+   * @param method     Name of the method
+   * @param descriptor Type descriptor of the method
+   * @param locals     Verification types of the locals, as class names or "J" for a long
+   * @param maxStack   Largest operand stack size used
+   * @return The class file
+   */
+  byte[] build(String method, String descriptor, List<String> locals, int maxStack) {
+    byte[] body = code.toByteArray();
+    if (body.length > 65535) {
+      throw new IllegalStateException("Method is too large to compile");
+    }
+    for (int[] fixup : fixups) {
+      int target = labels.get(fixup[1]);
+      if (target < 0) {
+        throw new IllegalStateException("Unbound label " + fixup[1]);
+      }
+      int offset = target - fixup[0];
+      if (offset != (short) offset) {
+        throw new IllegalStateException("Method is too large to compile");
+      }
+      body[fixup[0] + 1] = (byte) (offset >> 8);
+      body[fixup[0] + 2] = (byte) offset;
+      frames.add(target);
+    }
+    frames.remove(body.length);
+
+    //Every frame is the same full frame: all locals set and an empty stack
+    ByteArrayOutputStream table = new ByteArrayOutputStream();
+    int maxLocals = 0;
+    int previous = -1;
+    for (int offset : frames) {
+      table.write(255);
+      u2(table, offset - previous - 1);
+      u2(table, locals.size());
+      for (String type : locals) {
+        if (type.equals("J")) {
+          table.write(4);
+        } else {
+          table.write(7);
+          u2(table, classRef(type));
+        }
+      }
+      u2(table, 0);
+      previous = offset;
+    }
+    for (String type : locals) {
+      maxLocals += type.equals("J") ? 2 : 1;
+    }
+
+    int thisClass = classRef(name);
+    int superClass = classRef("java/lang/Object");
+    int methodName = utf8(method);
+    int methodType = utf8(descriptor);
+    int codeName = utf8("Code");
+    int tableName = utf8("StackMapTable");
+
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      u4(out, 0xCAFEBABE);
+      u2(out, 0);
+      u2(out, 52); //Java 8 class file version
+      u2(out, poolSize);
+      pool.writeTo(out);
+      u2(out, 0x0011); //ACC_PUBLIC | ACC_FINAL
+      u2(out, thisClass);
+      u2(out, superClass);
+      u2(out, 0); //Interfaces
+      u2(out, 0); //Fields
+      u2(out, 1); //Methods
+      u2(out, 0x0009); //ACC_PUBLIC | ACC_STATIC
+      u2(out, methodName);
+      u2(out, methodType);
+      u2(out, 1); //Attributes of the method
+      u2(out, codeName);
+      boolean hasFrames = !frames.isEmpty();
+      int tableLength = hasFrames ? 8 + table.size() : 0;
+      u4(out, 12 + body.length + tableLength);
+      u2(out, maxStack);
+      u2(out, maxLocals);
+      u4(out, body.length);
+      out.write(body);
+      u2(out, 0); //Exception table
+      u2(out, hasFrames ? 1 : 0);
+      if (hasFrames) {
+        u2(out, tableName);
+        u4(out, table.size() + 2);
+        u2(out, frames.size());
+        table.writeTo(out);
+      }
+      u2(out, 0); //Attributes of the class
+      return out.toByteArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * This adds a class to the constant pool.
+   *
+   * @param internalName Internal name of the class
+   * @return Index of the constant
+   */
+  private int classRef(String internalName) {
+    int utf8 = utf8(internalName);
+    return constant("C" + internalName, 7, out -> u2(out, utf8));
+  }
+
+  /**
+   * This adds a string to the constant pool.
+   *
+   * @param value String to add
+   * @return Index of the constant
+   */
+  private int utf8(String value) {
+    return constant("U" + value, 1, out -> {
+      try {
+        new DataOutputStream(out).writeUTF(value);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  /**
+   * This adds an entry to the constant pool if it is not already there.
+   *
+   * @param key    Used to find an existing entry
+   * @param tag    Type of entry
+   * @param writer Writes the body of the entry
+   * @return Index of the constant
+   */
+  private int constant(String key, int tag, java.util.function.Consumer<ByteArrayOutputStream> writer) {
+    Integer index = constants.get(key);
+    if (index == null) {
+      ByteArrayOutputStream entry = new ByteArrayOutputStream();
+      writer.accept(entry);
+      pool.write(tag);
+      pool.writeBytes(entry.toByteArray());
+      index = poolSize;
+      poolSize += tag == 5 ? 2 : 1; //Long constants take up two entries
+      constants.put(key, index);
+    }
+    return index;
+  }
+
+  private static void u2(ByteArrayOutputStream out, int value) {
+    out.write(value >> 8);
+    out.write(value);
+  }
+
+  private static void u4(ByteArrayOutputStream out, int value) {
+    u2(out, value >> 16);
+    u2(out, value);
+  }
+}
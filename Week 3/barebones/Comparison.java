@@ -0,0 +1,63 @@
+package barebones;
+
+/**
+ * This lists the comparisons which can be used in an if or else if.
+ */
+public enum Comparison {
+  EQ("=="), NE("!="), GT(">"), LT("<"), GE(">="), LE("<=");
+
+  final String symbol; //How the comparison is written in a program
+
+  Comparison(String symbol) {
+    this.symbol = symbol;
+  }
+
+  /**
+   * This finds the comparison written with a symbol.
+   *
+   * @param symbol How the comparison is written in a program
+   * @return The comparison
+   */
+  static Comparison of(String symbol) {
+    for (Comparison comparison : values()) {
+      if (comparison.symbol.equals(symbol)) {
+        return comparison;
+      }
+    }
+    throw new IllegalArgumentException("Invalid Comparison: " + symbol);
+  }
+
+  /**
+   * This will make the comparison between two values.
+   *
+   * @param a First value
+   * @param b Second value
+   * @return True or false, depending if the condition is true or false
+   */
+  boolean test(long a, long b) {
+    return switch (this) {
+      case EQ -> a == b;
+      case NE -> a != b;
+      case GT -> a > b;
+      case LT -> a < b;
+      case GE -> a >= b;
+      case LE -> a <= b;
+    };
+  }
+
+  /**
+   * This will make the comparison from the result of comparing two values.
+   *
+   * @param compared Negative, zero or positive as the first value is less than, equal to or greater
+   *                 than the second
+   * @return True or false, depending if the condition is true or false
+   */
+  boolean test(int compared) {
+    return test(compared, 0);
+  }
+
+  @Override
+  public String toString() {
+    return symbol;
+  }
+}
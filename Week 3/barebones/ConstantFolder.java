@@ -0,0 +1,417 @@
+package barebones;
+
+import java.util.*;
+
+/**
+ * This is the data flow optimisation pass, which propagates constants through a program.
+ *
+ * <p>It follows the program from the start, keeping track of which variables definitely exist and
+ * which of those have a known value. Arithmetic on known values becomes a set, variables with known
+ * values used as operands become literals, and if and while conditions which can be decided are
+ * folded away along with the sections which can never run. Inside a loop, nothing the loop changes
+ * is known, and after an if statement only values which every section agrees on are known. A call
+ * to a subroutine which was not inlined can read or change any variable, so no value is known after
+ * one, and nothing at all is known at the start of a copy of a subroutine's body. Nothing is known
+ * about the elements of an array after an instruction which changes the whole array or an element
+ * chosen by a variable.
+ *
+ * <p>A store which is overwritten later in the same straight run of instructions, before it is
+ * read, is deleted. Variables are output at the end, so the last store to each variable always
+ * stays, and so does anything which could divide by zero or, in the long numeric mode, overflow.
+ * Arithmetic is only worked out when its result fits in the numeric mode, so overflows still happen
+ * while the program runs.
+ */
+final class ConstantFolder {
+  static final String FOLDED = "Constants folded";
+  static final String BRANCHES = "Branches removed";
+  static final String LOOPS = "Loops removed";
+  static final String STORES = "Dead stores removed";
+
+  private final Instruction[] instructions;
+  private final Map<String, Integer> report;
+  private final Numbers numbers;
+
+  private ConstantFolder(Instruction[] instructions, Map<String, Integer> report, Numbers numbers) {
+    this.instructions = instructions;
+    this.report = report;
+    this.numbers = numbers;
+  }
+
+  /**
+   * This will propagate constants through a program.
+   *
+   * @param instructions This stores the linked program
+   * @param report       Number of instructions removed by each rule, added to by this pass
+   * @param numbers      Numeric mode the program runs in
+   * @return This will return the unlinked optimised program
+   */
+  static Instruction[] fold(Instruction[] instructions, Map<String, Integer> report, Numbers numbers) {
+    List<Instruction> optimised = new ArrayList<>(instructions.length);
+    new ConstantFolder(instructions, report, numbers).block(0, optimised, new Facts());
+    return optimised.toArray(new Instruction[0]);
+  }
+
+  /**
+   * This stores what is known about the variables at a point in the program.
+   */
+  private static final class Facts {
+    final Set<String> defined = new HashSet<>(); //Variables which definitely exist
+    final Map<String, Long> values = new HashMap<>(); //Known values of variables which exist
+
+    Facts copy() {
+      Facts copy = new Facts();
+      copy.defined.addAll(defined);
+      copy.values.putAll(values);
+      return copy;
+    }
+
+    /**
+     * This keeps only what is known on both paths, for where they join.
+     *
+     * @param other Facts from the other path
+     */
+    void meet(Facts other) {
+      defined.retainAll(other.defined);
+      values.entrySet().removeIf(entry -> !entry.getValue().equals(other.values.get(entry.getKey())));
+    }
+
+    void define(Instruction instruction) {
+      if (instruction.a != null) {
+        defined.add(instruction.a);
+      }
+      if (instruction.b != null) {
+        defined.add(instruction.b);
+      }
+    }
+
+    /**
+     * This gets the value of an operand if it is known.
+     *
+     * @param name    Name of the variable, or null if the operand is a literal
+     * @param literal Value of the operand if it is a literal
+     * @return The value, or null if it is not known
+     */
+    Long value(String name, long literal) {
+      return name == null ? Long.valueOf(literal) : values.get(name);
+    }
+  }
+
+  /**
+   * This optimises the instructions of a block, until the end of the program or of the block.
+   *
+   * @param address   Address of the first instruction in the block
+   * @param optimised Used to store the optimised instructions
+   * @param facts     What is known at the start of the block, updated to what is known at the end
+   * @return Address of the end, else if, else or endif which finishes the block
+   */
+  private int block(int address, List<Instruction> optimised, Facts facts) {
+    //Instructions since the last control instruction, and which of them could be deleted
+    int run = optimised.size();
+    List<Boolean> removable = new ArrayList<>();
+
+    while (address < instructions.length) {
+      Instruction instruction = instructions[address];
+
+      switch (instruction.opcode) {
+        case END, DECR_END, ELSE_IF, ELSE, ENDIF -> {
+          deadStores(optimised, run, removable);
+          return address;
+        }
+
+        case WHILE -> {
+          deadStores(optimised, run, removable);
+          address = loop(address, optimised, facts);
+          run = optimised.size();
+          removable.clear();
+        }
+
+        case IF -> {
+          deadStores(optimised, run, removable);
+          address = branch(address, optimised, facts);
+          run = optimised.size();
+          removable.clear();
+        }
+
+        //The subroutine called reads and changes any variable, and the next copy after a return can be called from anywhere
+        case CALL, RETURN -> {
+          deadStores(optimised, run, removable);
+          facts.values.clear();
+          if (instruction.opcode == Opcode.RETURN) {
+            facts.defined.clear();
+          }
+          optimised.add(instruction);
+          run = optimised.size();
+        }
+
+        //Array instructions can read any element of their arrays, so stores before them are kept
+        case ARRAY, EACH, COUNT, STORE, LOAD -> {
+          deadStores(optimised, run, removable);
+          facts.define(instruction);
+          forget(instruction, facts);
+          optimised.add(instruction);
+          run = optimised.size();
+        }
+
+        default -> {
+          boolean defined = facts.defined.contains(instruction.a)
+              && (instruction.b == null || facts.defined.contains(instruction.b));
+          Instruction folded = arithmetic(instruction, facts);
+          removable.add(defined && !numbers.fails(folded.opcode));
+          optimised.add(folded);
+        }
+      }
+
+      address++;
+    }
+    deadStores(optimised, run, removable);
+    return address;
+  }
+
+  /**
+   * This optimises an arithmetic instruction, working out its result if it can be known.
+   *
+   * @param instruction Arithmetic instruction
+   * @param facts       What is known before it, updated to what is known after it
+   * @return The optimised instruction
+   */
+  private Instruction arithmetic(Instruction instruction, Facts facts) {
+    String name = instruction.a;
+    Long current = facts.values.get(name);
+    Long operand = facts.value(instruction.b, instruction.bValue);
+    facts.define(instruction);
+
+    //A variable with a known value becomes a literal
+    if (instruction.b != null && operand != null) {
+      instruction = new Instruction(instruction.opcode, name, 0, null, operand, 0, instruction.line,
+          instruction.fused);
+    }
+
+    Long result = switch (instruction.opcode) {
+      case CLEAR -> 0L;
+      case SET -> operand;
+      case MULT -> operand != null && operand == 0 ? Long.valueOf(0) : fold(instruction.opcode, current, operand);
+      default -> fold(instruction.opcode, current, operand);
+    };
+
+    if (result == null) {
+      facts.values.remove(name);
+      return instruction;
+    }
+    facts.values.put(name, result);
+    if (instruction.opcode == Opcode.CLEAR || (instruction.opcode == Opcode.SET && instruction.b == null)) {
+      return instruction;
+    }
+    report.merge(FOLDED, 1, Integer::sum);
+    return new Instruction(Opcode.SET, name, 0, null, result, 0, instruction.line, instruction.fused);
+  }
+
+  /**
+   * This works out arithmetic on two known values, in the numeric mode of the program.
+   *
+   * @param opcode  Arithmetic to do
+   * @param value   Value of the variable, or null if not known
+   * @param operand Value of the operand, or null if not known
+   * @return The result, or null if it is not known, would divide by zero or would overflow
+   */
+  private Long fold(Opcode opcode, Long value, Long operand) {
+    if (value == null || operand == null
+        || ((opcode == Opcode.DIV || opcode == Opcode.MOD) && operand == 0)) {
+      return null;
+    }
+    try {
+      return numbers.apply(opcode, value, operand);
+    } catch (ArithmeticException e) {
+      return null;
+    }
+  }
+
+  /**
+   * This optimises a while loop, removing it if it can never run.
+   *
+   * @param address   Address of the while
+   * @param optimised Used to store the optimised instructions
+   * @param facts     What is known before the loop, updated to what is known after it
+   * @return Address of the end of the loop
+   */
+  private int loop(int address, List<Instruction> optimised, Facts facts) {
+    Instruction loop = instructions[address];
+    int end = loop.jump - 1;
+    facts.define(loop);
+
+    Long counter = facts.value(loop.a, loop.aValue);
+    Long limit = facts.value(loop.b, loop.bValue);
+    if (counter != null && counter.equals(limit)) {
+      report.merge(LOOPS, 1, Integer::sum);
+      return end;
+    }
+
+    //Nothing the loop changes is known inside it or after it
+    for (int i = address + 1; i < end; i++) {
+      if (instructions[i].opcode == Opcode.CALL) {
+        facts.values.clear();
+      } else if (instructions[i].array != null) {
+        forget(instructions[i], facts);
+      } else if (changes(instructions[i])) {
+        facts.values.remove(instructions[i].a);
+      }
+    }
+    limit = facts.value(loop.b, loop.bValue);
+    if (loop.b != null && limit != null) {
+      loop = new Instruction(Opcode.WHILE, loop.a, 0, null, limit, null, loop.line);
+    }
+
+    optimised.add(loop);
+    block(address + 1, optimised, facts.copy());
+    optimised.add(instructions[end]);
+
+    //The loop only finishes when the counter reaches the limit
+    if (limit != null) {
+      facts.values.put(loop.a, limit);
+    }
+    return end;
+  }
+
+  /**
+   * This optimises an if statement, removing sections whose conditions can be decided.
+   *
+   * @param address   Address of the if
+   * @param optimised Used to store the optimised instructions
+   * @param facts     What is known before the if statement, updated to what is known after it
+   * @return Address of the endif
+   */
+  private int branch(int address, List<Instruction> optimised, Facts facts) {
+    Facts pending = facts; //What is known when no section has run yet
+    Facts after = null; //What is known after the if statement
+    boolean open = false; //True once a section with an unknown condition has been kept
+    boolean closed = false; //True once a section is known to run if reached
+
+    while (instructions[address].opcode != Opcode.ENDIF) {
+      Instruction section = instructions[address];
+      int next = section.opcode == Opcode.ELSE ? section.exit - 1 : section.jump;
+
+      Boolean condition = true;
+      if (section.opcode != Opcode.ELSE) {
+        pending.define(section);
+        Long a = pending.value(section.a, section.aValue);
+        Long b = pending.value(section.b, section.bValue);
+        condition = a != null && b != null ? section.operator.test(a, b) : null;
+      }
+
+      if (closed || Boolean.FALSE.equals(condition)) {
+        //This section can never run
+        report.merge(BRANCHES, 1, Integer::sum);
+      } else {
+        if (condition == null) {
+          Opcode opcode = open ? Opcode.ELSE_IF : Opcode.IF;
+          optimised.add(new Instruction(opcode, section.a, section.aValue, section.b, section.bValue,
+              section.operator, section.line));
+          open = true;
+        } else {
+          //This section always runs if it is reached, so any sections after it never run
+          if (open) {
+            optimised.add(new Instruction(Opcode.ELSE, null, 0, null, 0, null, section.line));
+          }
+          closed = true;
+          if (section.opcode != Opcode.ELSE) {
+            report.merge(BRANCHES, 1, Integer::sum);
+          }
+        }
+
+        Facts result = pending.copy();
+        block(address + 1, optimised, result);
+        if (after == null) {
+          after = result;
+        } else {
+          after.meet(result);
+        }
+      }
+
+      pending = pending.copy();
+      address = next;
+    }
+
+    //Without a section which always runs, the if statement can finish without running any
+    if (!closed) {
+      if (after == null) {
+        after = pending;
+      } else {
+        after.meet(pending);
+      }
+    }
+    if (open) {
+      optimised.add(instructions[address]);
+    } else {
+      report.merge(BRANCHES, 1, Integer::sum);
+    }
+
+    Set<String> defined = new HashSet<>(after.defined);
+    Map<String, Long> values = new HashMap<>(after.values);
+    facts.defined.clear();
+    facts.defined.addAll(defined);
+    facts.values.clear();
+    facts.values.putAll(values);
+    return address;
+  }
+
+  /**
+   * This deletes stores in a straight run of instructions which are overwritten before being read.
+   * Only stores to variables which already exist are deleted, so variables are still created in
+   * the same order.
+   *
+   * @param optimised Optimised instructions
+   * @param run       Index of the first instruction in the run
+   * @param removable Whether each instruction in the run could be deleted
+   */
+  private void deadStores(List<Instruction> optimised, int run, List<Boolean> removable) {
+    Set<String> overwritten = new HashSet<>();
+
+    for (int i = optimised.size() - 1; i >= run; i--) {
+      Instruction instruction = optimised.get(i);
+      if (overwritten.contains(instruction.a) && removable.get(i - run)) {
+        optimised.remove(i);
+        report.merge(STORES, 1, Integer::sum);
+        continue;
+      }
+
+      boolean overwrites = instruction.opcode == Opcode.CLEAR
+          || (instruction.opcode == Opcode.SET && !instruction.a.equals(instruction.b));
+      if (overwrites) {
+        overwritten.add(instruction.a);
+      } else {
+        overwritten.remove(instruction.a);
+      }
+      if (instruction.b != null) {
+        overwritten.remove(instruction.b);
+      }
+    }
+    removable.clear();
+  }
+
+  /**
+   * This forgets the values an array instruction can change: its first operand, and every element
+   * of its array if it changes the whole array or an element chosen by a variable.
+   *
+   * @param instruction Array instruction
+   * @param facts       What is known, updated to what is known after it
+   */
+  private static void forget(Instruction instruction, Facts facts) {
+    facts.values.remove(instruction.a);
+    if (instruction.opcode == Opcode.EACH || instruction.opcode == Opcode.STORE) {
+      String prefix = instruction.array.name + "[";
+      facts.values.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+  }
+
+  /**
+   * This checks if an instruction changes the value of its first operand.
+   *
+   * @param instruction Instruction to check
+   * @return True if it is arithmetic
+   */
+  private static boolean changes(Instruction instruction) {
+    return switch (instruction.opcode) {
+      case CLEAR, INCR, DECR, MULT, DIV, MOD, SET, DECR_END -> true;
+      default -> false;
+    };
+  }
+}
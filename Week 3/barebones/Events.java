@@ -0,0 +1,232 @@
+package barebones;
+
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.*;
+
+/**
+ * This holds the Java Flight Recorder events of the interpreter, so a recording shows what a bare
+ * bones program did rather than one long call into it.
+ *
+ * <p>Creating the first event sets up the recorder, which takes longer than running most programs,
+ * so no event is created until a recording has started the recorder. After that, each event is
+ * only filled in and committed if it is enabled in the recording, so with no recording running they
+ * cost nothing. Instructions and back edges are only counted by the interpreter, and only in runs
+ * which have the run or back edge events enabled, so compiled code is never slowed down by them.
+ *
+ * <p>They are recorded with the usual JFR options, such as
+ * {@code java -XX:StartFlightRecording=filename=run.jfr Interpreter}, and are under BareBones in JDK
+ * Mission Control or {@code jfr print --categories BareBones run.jfr}.
+ */
+final class Events {
+  private static final LongAdder BACK_EDGES = new LongAdder(); //Back edges counted by every run so far
+  private static final LongAdder RUNS = new LongAdder(); //Runs which counted their back edges
+  private static volatile boolean started; //True once the recorder is started and the back edge event added
+
+  private Events() {
+  }
+
+  /**
+   * This is recorded each time a program is compiled, from parsing to resolving its variables, or
+   * read back from the cache.
+   */
+  @Name("barebones.Compile")
+  @Label("Compile")
+  @Category("BareBones")
+  @Description("Program parsed, linked, optimised and resolved, or read from the cache")
+  @StackTrace(false)
+  static final class Compile extends Event {
+    @Label("Lines")
+    int lines;
+
+    @Label("Instructions")
+    int instructions;
+
+    @Label("Variables")
+    int variables;
+
+    @Label("Numbers")
+    String numbers;
+
+    @Label("Optimised")
+    boolean optimised;
+
+    @Label("Cache")
+    @Description("True if the program was compiled through the cache")
+    boolean cache;
+  }
+
+  /**
+   * This is recorded when a program is read back from the cache rather than compiled.
+   */
+  @Name("barebones.Load")
+  @Label("Load From Cache")
+  @Category("BareBones")
+  @StackTrace(false)
+  static final class Load extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Instructions")
+    int instructions;
+  }
+
+  /**
+   * This is recorded for each optimisation pass run over a program.
+   */
+  @Name("barebones.Optimise")
+  @Label("Optimisation Pass")
+  @Category("BareBones")
+  @StackTrace(false)
+  static final class Optimise extends Event {
+    @Label("Pass")
+    String pass;
+
+    @Label("Instructions Before")
+    int before;
+
+    @Label("Instructions After")
+    int after;
+  }
+
+  /**
+   * This is recorded each time the bytecode engine compiles a program or, for the tiered engine, a
+   * loop.
+   */
+  @Name("barebones.Bytecode")
+  @Label("Bytecode Compile")
+  @Category("BareBones")
+  @StackTrace(false)
+  static final class Bytecode extends Event {
+    @Label("First Address")
+    int from;
+
+    @Label("Last Address")
+    @Description("Address after the last instruction compiled")
+    int to;
+
+    @Label("Class Size")
+    @DataAmount
+    int size;
+  }
+
+  /**
+   * This is recorded for each run of a program, and lasts as long as the run.
+   */
+  @Name("barebones.Run")
+  @Label("Run")
+  @Category("BareBones")
+  @StackTrace(false)
+  static final class Run extends Event {
+    @Label("Engine")
+    String engine;
+
+    @Label("Numbers")
+    String numbers;
+
+    @Label("Status")
+    @Description("FINISHED, STEP_LIMIT, TIME_LIMIT or ERROR")
+    String status;
+
+    @Label("Instructions")
+    @Description("Instructions in the compiled program")
+    int instructions;
+
+    @Label("Dispatched")
+    @Description("Instructions dispatched by the interpreter, not counting compiled code")
+    long dispatched;
+
+    @Label("Back Edges")
+    @Description("Loop back edges taken in the interpreter, not counting compiled code")
+    long backEdges;
+
+    @Label("Steps Charged")
+    @Description("Steps charged against the limits, when there are any")
+    long steps;
+
+    @Label("Variables")
+    int variables;
+  }
+
+  /**
+   * This is recorded when a run is stopped by its step or time limit.
+   */
+  @Name("barebones.Limit")
+  @Label("Limit Reached")
+  @Category("BareBones")
+  @StackTrace(false)
+  static final class Limit extends Event {
+    @Label("Status")
+    String status;
+
+    @Label("Steps Charged")
+    long steps;
+
+    @Label("Step Limit")
+    long maxSteps;
+
+    @Label("Time Limit")
+    @Timespan(Timespan.MILLISECONDS)
+    long timeLimit;
+  }
+
+  /**
+   * This is recorded at the start and end of each chunk of the recording, with the back edges
+   * counted by every run so far. Its period can be changed in the recording settings.
+   */
+  @Name("barebones.BackEdges")
+  @Label("Back Edges")
+  @Category("BareBones")
+  @Period("everyChunk")
+  @StackTrace(false)
+  static final class BackEdges extends Event {
+    @Label("Back Edges")
+    long backEdges;
+
+    @Label("Runs")
+    long runs;
+  }
+
+  /**
+   * This checks if the recorder has been started, by a recording from the command line or by jcmd,
+   * so events can be created. The first time it finds the recorder started, it adds the back edge
+   * event, since adding a periodic event would otherwise start the recorder itself.
+   *
+   * @return True if events can be recorded
+   */
+  static boolean recording() {
+    if (!started && FlightRecorder.isInitialized()) {
+      synchronized (Events.class) {
+        if (!started) {
+          FlightRecorder.addPeriodicEvent(BackEdges.class, () -> {
+            BackEdges event = new BackEdges();
+            event.backEdges = BACK_EDGES.sum();
+            event.runs = RUNS.sum();
+            event.commit();
+          });
+          started = true;
+        }
+      }
+    }
+    return started;
+  }
+
+  /**
+   * This checks if a run should count its instructions and back edges for its events. It does not
+   * start anything itself, so it is false until {@link #recording} has found the recorder started.
+   *
+   * @return True if the run or back edge event is enabled
+   */
+  static boolean counted() {
+    return started && (new Run().isEnabled() || new BackEdges().isEnabled());
+  }
+
+  /**
+   * This adds the back edges of a run which counted them to the totals.
+   *
+   * @param backEdges Back edges the run took
+   */
+  static void count(long backEdges) {
+    BACK_EDGES.add(backEdges);
+    RUNS.increment();
+  }
+}
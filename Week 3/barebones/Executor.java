@@ -0,0 +1,512 @@
+package barebones;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * This runs compiled programs, using the engine chosen in the options.
+ * An executor is made once for a program and can then run it any number of times, each run using
+ * its own {@link State}.
+ *
+ * <p>The interpreter is the reference engine. The bytecode engine compiles the whole program when
+ * the executor is made, and the tiered engine interprets the program and compiles each loop once it
+ * is hot. Loops compiled by the tiered engine are kept for later runs.
+ *
+ * <p>In the long and big numeric modes, arithmetic is done by {@link Arithmetic}, so the int mode
+ * keeps its own simple path. Big numbers are only supported by the interpreter.
+ *
+ * <p>Calls to subroutines which were not inlined are only run by the interpreter, so a program
+ * with them is interpreted by the bytecode engine, and the tiered engine only compiles the loops
+ * without them.
+ */
+public final class Executor {
+  /**
+   * This is told about every instruction the interpreter runs, for outputting or stepping.
+   */
+  public interface Listener {
+    /**
+     * This is called before the first instruction runs, once any inputs have been given values.
+     *
+     * @param state Variables used by the program
+     */
+    default void start(State state) {
+    }
+
+    /**
+     * This is called after an instruction has run.
+     *
+     * @param address        Address of the instruction
+     * @param programCounter Address of the next instruction
+     * @param instruction    Instruction which ran
+     * @param state          Variables used by the program
+     */
+    void step(int address, int programCounter, Instruction instruction, State state);
+
+    /**
+     * This joins two listeners, so both are told about every instruction.
+     *
+     * @param first  Listener told first, or null
+     * @param second Listener told second, or null
+     * @return The joined listener, or whichever one is not null
+     */
+    static Listener both(Listener first, Listener second) {
+      if (first == null || second == null) {
+        return first == null ? second : first;
+      }
+      return new Listener() {
+        @Override
+        public void start(State state) {
+          first.start(state);
+          second.start(state);
+        }
+
+        @Override
+        public void step(int address, int programCounter, Instruction instruction, State state) {
+          first.step(address, programCounter, instruction, state);
+          second.step(address, programCounter, instruction, state);
+        }
+      };
+    }
+  }
+
+  final Program program;
+  final String fallback; //Why the bytecode engine could not compile the program, or null
+  private final MethodHandle compiled; //Whole program compiled by the bytecode engine, otherwise null
+  private final Tiering tiering; //Used by the tiered engine to compile hot loops, otherwise null
+  private final Regions regions; //Regions run at the same time with --parallel, otherwise null
+  private final Listener listener; //Told about every instruction run, or null
+  private final boolean counting; //True to count the instructions dispatched for the report
+  private final boolean checked; //True if back edges are checked for limits, checkpoints or stopping regions
+  private final long maxSteps; //Most steps charged before a run is stopped, or 0 for no limit
+  private final long timeLimit; //Most milliseconds a run can take, or 0 for no limit
+  private final Checkpoint checkpoint; //Used to take checkpoints, or null
+  private final long checkpointEvery; //Milliseconds between checkpoints
+
+  /**
+   * This creates an executor for a program, compiling it if the bytecode engine is used.
+   *
+   * @param program Program to run
+   * @param options Options choosing the engine
+   */
+  public Executor(Program program, Options options) {
+    this(program, options, null);
+  }
+
+  /**
+   * This creates an executor for a program, compiling it if the bytecode engine is used.
+   * Outputting and stepping through a program happen after each instruction, so with a listener
+   * the program is always interpreted. Checkpoints are taken at loop back edges, which the bytecode
+   * engine cannot carry on from, so checkpointed programs are interpreted or tiered.
+   *
+   * @param program  Program to run
+   * @param options  Options choosing the engine
+   * @param listener Told about every instruction run, or null
+   */
+  Executor(Program program, Options options, Listener listener) {
+    this.program = program;
+    this.listener = listener;
+    counting = options.report;
+    maxSteps = options.maxSteps;
+    timeLimit = options.timeLimit;
+    checkpoint = options.checkpoint != null ? new Checkpoint(program, options.checkpoint) : null;
+    checkpointEvery = options.checkpointEvery;
+
+    MethodHandle method = null;
+    String reason = null;
+    boolean compilable = listener == null && program.numbers != Numbers.BIG;
+    //Regions are only split when nothing has to see the run in order, which limits and checkpoints do
+    regions = options.parallel && listener == null && !options.checked()
+        ? Regions.of(program, options.engine.equals("bytecode") && compilable) : null;
+    //Regions check their back edges too, so a region stops when another one stops with an error
+    checked = options.checked() || regions != null;
+    if (options.engine.equals("bytecode") && program.numbers == Numbers.BIG) {
+      reason = "Big numbers are only supported by the interpreter";
+    } else if (options.engine.equals("bytecode") && checkpoint != null) {
+      reason = "Checkpoints are only supported by the interpreter and tiered engine";
+    } else if (options.engine.equals("bytecode") && compilable && regions == null) {
+      try {
+        method = BytecodeEngine.compile(program, 0, program.instructions.length, checked);
+      } catch (IllegalStateException e) {
+        //Too large to compile, so the program is interpreted
+        reason = e.getMessage();
+      }
+    }
+    compiled = method;
+    fallback = reason;
+    tiering = options.engine.equals("tiered") && compilable ? new Tiering(program, options.tierThreshold, checked) : null;
+  }
+
+  /**
+   * This checks if the program will be interpreted, rather than compiled as a whole.
+   *
+   * @return True if the interpreter dispatches every instruction
+   */
+  boolean interpreted() {
+    return compiled == null && tiering == null && (regions == null || !regions.compiled());
+  }
+
+  /**
+   * This runs the program with new variables.
+   *
+   * @return The variables after the program has finished
+   */
+  public State run() {
+    State state = new State(program);
+    run(state);
+    return state;
+  }
+
+  /**
+   * This runs the program.
+   *
+   * @param state Variables used by the program
+   */
+  public void run(State state) {
+    run(state, 0);
+  }
+
+  /**
+   * This runs the program from an address, such as one restored from a checkpoint. Compiled
+   * programs can only start from the beginning, so from anywhere else they are interpreted.
+   *
+   * @param state          Variables used by the program
+   * @param programCounter Address of the first instruction to run
+   */
+  public void run(State state, int programCounter) {
+    if (checked) {
+      state.limit(maxSteps, timeLimit, checkpoint != null ? checkpointEvery : 0);
+    }
+    Events.Run event = Events.recording() ? new Events.Run() : null;
+    if (event != null) {
+      event.begin();
+    }
+    state.counted = counting || Events.counted();
+    boolean whole = compiled != null && programCounter == 0;
+    String status = "ERROR";
+    try {
+      if (whole) {
+        BytecodeEngine.invoke(compiled, state);
+      } else if (regions != null && programCounter == 0) {
+        regions.run(state, this);
+      } else {
+        interpret(state, programCounter, program.instructions.length);
+      }
+      status = (state.stopped != null ? state.stopped : Result.Status.FINISHED).name();
+    } finally {
+      record(event, state, whole ? "bytecode" : tiering != null ? "tiered" : "interpreter", status);
+    }
+  }
+
+  /**
+   * This records the events of a run which has ended, if they are enabled.
+   *
+   * @param event  Event started when the run started, or null if the recorder was not started
+   * @param state  Variables used by the program
+   * @param engine Engine which ran the program
+   * @param status How the run ended, or ERROR if it stopped with an error
+   */
+  private void record(Events.Run event, State state, String engine, String status) {
+    if (state.counted) {
+      Events.count(state.backEdges);
+    }
+    if (event == null) {
+      return;
+    }
+    if (event.shouldCommit()) {
+      event.engine = engine;
+      event.numbers = program.numbers.name();
+      event.status = status;
+      event.instructions = program.instructions.length;
+      event.dispatched = state.dispatched;
+      event.backEdges = state.backEdges;
+      event.steps = state.charged;
+      event.variables = state.count;
+      event.commit();
+    }
+    if (state.stopped != null) {
+      Events.Limit limit = new Events.Limit();
+      if (limit.isEnabled()) {
+        limit.status = state.stopped.name();
+        limit.steps = state.charged;
+        limit.maxSteps = maxSteps;
+        limit.timeLimit = timeLimit;
+        limit.commit();
+      }
+    }
+  }
+
+  /**
+   * This interprets the instructions between two addresses, which are either the whole program or
+   * a region of it, with back edges counted for the tiered engine.
+   *
+   * @param state Variables used by the program
+   * @param start Address of the first instruction to run
+   * @param end   Address after the last instruction to run
+   */
+  void interpret(State state, int start, int end) {
+    interpret(state, start, end, tiering != null ? new int[program.instructions.length] : null);
+  }
+
+  /**
+   * This is the instruction processing loop, which runs a program until programCounter has reached
+   * the end of it, or of the region being run.
+   *
+   * @param state     Variables used by the program
+   * @param start     Address of the first instruction to run
+   * @param end       Address after the last instruction to run
+   * @param backEdges Back edges taken by the loop starting at each address, or null if not tiered
+   */
+  private void interpret(State state, int start, int end, int[] backEdges) {
+    Instruction[] instructions = program.instructions;
+    boolean observed = state.counted || listener != null;
+    boolean exact = program.numbers != Numbers.INT; //True if arithmetic checks for overflow
+    //This stores the current instruction address
+    int programCounter = start;
+    if (listener != null) {
+      listener.start(state);
+    }
+
+    while (programCounter < end) {
+      int address = programCounter;
+      Instruction instruction = instructions[address];
+
+      switch (instruction.opcode) {
+        case CLEAR, INCR, DECR, MULT, DIV, MOD, SET -> {
+          if (exact) {
+            Arithmetic.basic(instruction, state);
+          } else {
+            basic(instruction, state);
+          }
+        }
+
+        case WHILE -> {
+          MethodHandle loop = backEdges != null ? tiering.loop(programCounter) : null;
+          if (loop != null) {
+            //Loop has been compiled: runs all of it then continues after the end, unless it was stopped
+            BytecodeEngine.invoke(loop, state);
+            programCounter = after(state, instruction.jump);
+          } else if (checkWhile(instruction, state)) { //Checks if variable meets condition
+            //Meets condition: jumps past the end of the loop
+            programCounter = instruction.jump - 1;
+          }
+        }
+
+        case END -> programCounter = end(programCounter, instruction, state, backEdges);
+
+        //Decrements the loop counter then does the end
+        case DECR_END -> {
+          if (exact) {
+            Arithmetic.decrement(instruction, state);
+          } else {
+            state.values[instruction.aSlot] = (int) (state.values[instruction.aSlot] - instruction.immediate);
+          }
+          programCounter = end(programCounter, instruction, state, backEdges);
+        }
+
+        case IF -> {
+          if (!ifstate(instruction, state)) {
+            //Condition false: skips to next part of statement
+            programCounter = ifskip(instruction.jump, instructions, state) - 1;
+          }
+        }
+
+        //Reached at the end of a section which has run: skips to after the endif
+        case ELSE_IF, ELSE -> programCounter = instruction.exit - 1;
+
+        case ENDIF -> {
+        }
+
+        //Summarised loop: runs the whole loop at once
+        case LOOP -> instruction.summary.apply(instruction, state);
+
+        //Works on a whole array, or an element chosen by a variable
+        case ARRAY, EACH, COUNT, STORE, LOAD -> instruction.array.apply(instruction, state);
+
+        //Calls a subroutine: remembers where to come back to, then runs its copy of the body
+        case CALL -> {
+          state.call(programCounter + 1, instruction);
+          programCounter = instruction.jump - 1;
+        }
+
+        //Goes back to the last call, or ends the program if the main program has finished
+        case RETURN -> programCounter = (state.depth == 0 ? instructions.length : state.back()) - 1;
+      }
+
+      //Increments programCounter
+      programCounter++;
+
+      if (observed) {
+        observe(address, programCounter, instruction, state);
+      }
+    }
+  }
+
+  /**
+   * This counts an instruction and any back edge it took, and tells the listener about it.
+   *
+   * @param address        Address of the instruction
+   * @param programCounter Address of the next instruction
+   * @param instruction    Instruction which ran
+   * @param state          Variables used by the program
+   */
+  private void observe(int address, int programCounter, Instruction instruction, State state) {
+    if (state.counted) {
+      state.dispatched++;
+      state.removed += instruction.fused;
+      if (programCounter <= address && (instruction.opcode == Opcode.END || instruction.opcode == Opcode.DECR_END)) {
+        state.backEdges++;
+      }
+    }
+    if (listener != null) {
+      listener.step(address, programCounter, instruction, state);
+    }
+  }
+
+  /**
+   * This processes the end of a while loop, returning to the start of its body if the condition fails.
+   *
+   * @param programCounter Address of the end
+   * @param instruction    End instruction, which has the while's operands
+   * @param state          Variables used by the program
+   * @param backEdges      Back edges taken by each loop, or null if not tiered
+   * @return The address before the next instruction to run
+   */
+  private int end(int programCounter, Instruction instruction, State state, int[] backEdges) {
+    if (!checkWhile(instruction, state)) { //Checks if variable meets condition
+      if (checked && state.tick(programCounter - instruction.jump + 2, instruction.jump)) {
+        if (state.stopped != null) {
+          //Limit reached: stops the run where it is
+          return program.instructions.length - 1;
+        }
+        //Checkpoint due: every variable is in the register file, and the body is next
+        state.yielded = -1;
+        checkpoint.write(state, instruction.jump);
+      }
+      MethodHandle loop = backEdges != null ? tiering.backEdge(backEdges, instruction.jump - 1) : null;
+      if (loop != null) {
+        //Loop is hot: runs the rest of it as compiled code then continues after the end, unless it was stopped
+        BytecodeEngine.invoke(loop, state);
+        programCounter = after(state, programCounter + 1);
+      } else {
+        //Fails condition: jumps to the start of the loop body
+        programCounter = instruction.jump - 1;
+      }
+    }
+    return programCounter;
+  }
+
+  /**
+   * This works out where to carry on from after a compiled loop, which may have left early because
+   * a limit was reached or a checkpoint was due. A checkpoint is taken here, where the compiled
+   * loop has stored its variables back into the register file.
+   *
+   * @param state Variables used by the program
+   * @param next  Address after the loop, where the run carries on if the loop finished
+   * @return The address before the next instruction to run
+   */
+  private int after(State state, int next) {
+    if (state.stopped != null) {
+      return program.instructions.length - 1;
+    }
+    if (state.yielded != -1) {
+      next = state.yielded;
+      state.yielded = -1;
+      checkpoint.write(state, next);
+    }
+    return next - 1;
+  }
+
+  /**
+   * This method is used to process the basic instructions (Clear, Incr, Decr, Mult, Div, Mod, Set).
+   * Values are kept within the range of an int, wrapping around on overflow.
+   *
+   * @param instruction Instruction to perform, operand a is the variable it is performed on
+   * @param state       Variables used by the program
+   */
+  private static void basic(Instruction instruction, State state) {
+    long[] values = state.values;
+    int identifier = instruction.aSlot;
+
+    if (instruction.define) {
+      state.define(instruction);
+    }
+    long modifier = instruction.bSlot == -1 ? instruction.bValue : values[instruction.bSlot];
+
+    switch (instruction.opcode) {
+      case CLEAR -> values[identifier] = 0; //Sets value to 0 - Clear
+      case INCR -> values[identifier] = (int) (values[identifier] + modifier); //Increments value - Incr
+      case DECR -> values[identifier] = (int) (values[identifier] - modifier); //Decrements value - Decr
+      case MULT -> values[identifier] = (int) (values[identifier] * modifier); //Multiply value - Mult
+      case DIV -> values[identifier] = (int) (values[identifier] / modifier); //Divide value - Div
+      case MOD -> values[identifier] = (int) (values[identifier] % modifier); //Modulo value - Mod
+      case SET -> values[identifier] = modifier; //Sets value - Set
+    }
+  }
+
+  /**
+   * This method will take the if statement's values and operator and determine if it is true or false.
+   *
+   * @param instruction If or else if instruction
+   * @param state       Variables used by the program
+   * @return True or false, depending if the condition is true or false
+   */
+  private static boolean ifstate(Instruction instruction, State state) {
+    if (instruction.define) {
+      state.define(instruction);
+    }
+    if (state.big != null) {
+      return instruction.operator.test(Arithmetic.compare(instruction.aSlot, instruction.aValue,
+          instruction.bSlot, instruction.bValue, state));
+    }
+    return instruction.operator.test(value(instruction.aSlot, instruction.aValue, state),
+        value(instruction.bSlot, instruction.bValue, state));
+  }
+
+  /**
+   * This is used to find the section of an if statement to run after a condition has failed.
+   * It checks each following else if in turn, using the addresses from the linker.
+   *
+   * @param programCounter Address of the next else if, else or endif
+   * @param instructions   This stores the program
+   * @param state          Variables used by the program
+   * @return This will return the address of the first instruction to run
+   */
+  private static int ifskip(int programCounter, Instruction[] instructions, State state) {
+    Instruction instruction = instructions[programCounter];
+
+    //Moves to the next section until a condition is true or there are no more conditions
+    while (instruction.opcode == Opcode.ELSE_IF && !ifstate(instruction, state)) {
+      programCounter = instruction.jump;
+      instruction = instructions[programCounter];
+    }
+    return programCounter + 1;
+  }
+
+  /**
+   * This will check if a while loop's variable meets its condition.
+   *
+   * @param instruction While or end instruction
+   * @param state       Variables used by the program
+   * @return Returns true of false if the condition meets or fails
+   */
+  private static boolean checkWhile(Instruction instruction, State state) {
+    if (instruction.define) {
+      state.define(instruction);
+    }
+    if (state.big != null) {
+      return Arithmetic.compare(instruction.aSlot, instruction.aValue, instruction.bSlot, instruction.bValue, state) == 0;
+    }
+    return value(instruction.aSlot, instruction.aValue, state) == value(instruction.bSlot, instruction.bValue, state);
+  }
+
+  /**
+   * This gets the value of an operand, which is either a variable or a literal.
+   *
+   * @param slot    Slot of the variable, or -1 if the operand is a literal
+   * @param literal Value of the operand if it is a literal
+   * @param state   Variables used by the program
+   * @return The value of the operand
+   */
+  private static long value(int slot, long literal, State state) {
+    return slot == -1 ? literal : state.values[slot];
+  }
+}
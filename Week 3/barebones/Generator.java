@@ -0,0 +1,541 @@
+package barebones;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * This writes bare bones programs of a chosen shape, along with the variables each one ends with,
+ * for testing how parsing, linking and the engines scale and for keeping a corpus of regression
+ * tests.
+ *
+ * <p>Programs are made of arithmetic, counting while loops nested up to a chosen depth and if
+ * statements with else if and else sections. Each program is worked out by the generator itself as
+ * it is made, without the interpreter, so its expected variables can be checked against any engine,
+ * numeric mode or optimisation. Every value stays well inside an int, since additions,
+ * subtractions and multiplications are always followed by a mod, so the expected variables are the
+ * same in every numeric mode. Programs are made from a seed, so the same arguments always write the
+ * same files.
+ */
+public final class Generator {
+  private static final int BODY = 4; //Most statements in the body of a loop or section of an if
+  private static final int LITERAL = 1000; //Largest literal added, subtracted or multiplied by
+  private static final int MODULUS = 1000000; //Largest literal a mod is taken by
+  private static final int NESTED = 4; //Most if statements nested inside each other
+
+  private final int lines; //Lines to write, which the last statement can go a little over
+  private final int depth; //Most loops nested inside each other
+  private final int iterations; //Most times round each loop
+  private final int variables; //Number of variables the program works on
+  private final int branches; //Percentage of statements which are if statements
+  private final int loops; //Percentage of statements which are while loops
+  private Random random;
+  private int written; //Lines made so far
+
+  /**
+   * This stores a statement of a generated program, which can write itself and run itself.
+   */
+  private abstract static class Statement {
+    /**
+     * This writes the lines of the statement.
+     *
+     * @param out    Used to write the program
+     * @param indent Spaces before each line
+     * @throws IOException Writing gone wrong
+     */
+    abstract void write(Writer out, String indent) throws IOException;
+
+    /**
+     * This runs the statement the way the interpreter would.
+     *
+     * @param state Variables of the program
+     */
+    abstract void run(Run state);
+  }
+
+  /**
+   * This stores an arithmetic statement, such as {@code incr Va Vb;} or {@code clear Va;}.
+   */
+  private static final class Step extends Statement {
+    final Opcode opcode; //Arithmetic done
+    final int variable; //Variable changed
+    final int operand; //Variable used, or -1 if it is a literal
+    final int literal; //Value used if it is a literal
+
+    Step(Opcode opcode, int variable, int operand, int literal) {
+      this.opcode = opcode;
+      this.variable = variable;
+      this.operand = operand;
+      this.literal = literal;
+    }
+
+    @Override
+    void write(Writer out, String indent) throws IOException {
+      out.write(indent + opcode.name().toLowerCase() + " " + name(variable));
+      if (opcode != Opcode.CLEAR) {
+        out.write(" " + (operand != -1 ? name(operand) : String.valueOf(literal)));
+      }
+      out.write(";\n");
+    }
+
+    @Override
+    void run(Run state) {
+      state.define(variable);
+      state.define(operand);
+      int value = state.values[variable];
+      int used = operand != -1 ? state.values[operand] : literal;
+      state.values[variable] = switch (opcode) {
+        case CLEAR -> 0;
+        case INCR -> value + used;
+        case DECR -> value - used;
+        case MULT -> value * used;
+        case DIV -> value / used;
+        default -> value % used;
+      };
+    }
+  }
+
+  /**
+   * This stores two statements which always go together.
+   */
+  private static final class Pair extends Statement {
+    final Statement first; //Statement run first
+    final Statement second; //Statement run after it
+
+    Pair(Statement first, Statement second) {
+      this.first = first;
+      this.second = second;
+    }
+
+    @Override
+    void write(Writer out, String indent) throws IOException {
+      first.write(out, indent);
+      second.write(out, indent);
+    }
+
+    @Override
+    void run(Run state) {
+      first.run(state);
+      second.run(state);
+    }
+  }
+
+  /**
+   * This stores a while loop which counts down to 0 or up to a literal, with a counter only it
+   * changes.
+   */
+  private static final class Loop extends Statement {
+    final int counter; //Variable counting the times round
+    final int times; //Times round the loop
+    final boolean up; //True to count up from 0, false to count down to 0
+    final List<Statement> body; //Statements inside the loop
+
+    Loop(int counter, int times, boolean up, List<Statement> body) {
+      this.counter = counter;
+      this.times = times;
+      this.up = up;
+      this.body = body;
+    }
+
+    @Override
+    void write(Writer out, String indent) throws IOException {
+      String name = name(counter);
+      out.write(indent + "clear " + name + ";\n");
+      if (up) {
+        out.write(indent + "while " + name + " not " + times + " do;\n");
+      } else {
+        out.write(indent + "incr " + name + " " + times + ";\n");
+        out.write(indent + "while " + name + " not 0 do;\n");
+      }
+      for (Statement statement : body) {
+        statement.write(out, indent + "  ");
+      }
+      out.write(indent + "  " + (up ? "incr " : "decr ") + name + " 1;\n");
+      out.write(indent + "end;\n");
+    }
+
+    @Override
+    void run(Run state) {
+      state.define(counter);
+      int[] values = state.values;
+      values[counter] = up ? 0 : times;
+      while (values[counter] != (up ? times : 0)) {
+        for (Statement statement : body) {
+          statement.run(state);
+        }
+        values[counter] += up ? 1 : -1;
+      }
+    }
+  }
+
+  /**
+   * This stores an if statement, with any number of else if sections and possibly an else.
+   */
+  private static final class Branch extends Statement {
+    final int[] variables; //Variable compared in each condition
+    final Comparison[] comparisons; //Comparison made by each condition
+    final int[] literals; //Literal each variable is compared with
+    final List<List<Statement>> sections; //Statements run by each condition, then by the else if there is one
+
+    Branch(int[] variables, Comparison[] comparisons, int[] literals, List<List<Statement>> sections) {
+      this.variables = variables;
+      this.comparisons = comparisons;
+      this.literals = literals;
+      this.sections = sections;
+    }
+
+    @Override
+    void write(Writer out, String indent) throws IOException {
+      for (int i = 0; i < sections.size(); i++) {
+        if (i == variables.length) {
+          out.write(indent + "else;\n");
+        } else {
+          out.write(indent + (i == 0 ? "if " : "else if ") + name(variables[i]) + " "
+              + comparisons[i].symbol + " " + literals[i] + ";\n");
+        }
+        for (Statement statement : sections.get(i)) {
+          statement.write(out, indent + "  ");
+        }
+      }
+      out.write(indent + "endif;\n");
+    }
+
+    @Override
+    void run(Run state) {
+      int chosen = variables.length;
+      for (int i = 0; i < variables.length; i++) {
+        state.define(variables[i]);
+        if (comparisons[i].test(state.values[variables[i]], literals[i])) {
+          chosen = i;
+          break;
+        }
+      }
+      if (chosen < sections.size()) {
+        for (Statement statement : sections.get(chosen)) {
+          statement.run(state);
+        }
+      }
+    }
+  }
+
+  /**
+   * This stores the variables of a generated program as it is run, with the order they were
+   * created in.
+   */
+  private static final class Run {
+    final int[] values; //Value of each variable
+    final boolean[] defined; //True for each variable which has been created
+    final int[] order; //Variables in the order they were created
+    int count; //Number of variables created
+
+    Run(int size) {
+      values = new int[size];
+      defined = new boolean[size];
+      order = new int[size];
+    }
+
+    /**
+     * This creates a variable if it does not already exist.
+     *
+     * @param variable Variable used, or -1 for a literal
+     */
+    void define(int variable) {
+      if (variable != -1 && !defined[variable]) {
+        defined[variable] = true;
+        order[count++] = variable;
+      }
+    }
+  }
+
+  /**
+   * This creates a generator of programs with a shape.
+   *
+   * @param lines      Lines in each program
+   * @param depth      Most loops nested inside each other
+   * @param iterations Most times round each loop
+   * @param variables  Number of variables each program works on
+   * @param branches   Percentage of statements which are if statements
+   * @param loops      Percentage of statements which are while loops
+   */
+  Generator(int lines, int depth, int iterations, int variables, int branches, int loops) {
+    this.lines = lines;
+    this.depth = depth;
+    this.iterations = iterations;
+    this.variables = variables;
+    this.branches = branches;
+    this.loops = loops;
+  }
+
+  /**
+   * This is used to get commandline inputs and write the programs.
+   *
+   * @param args --output=DIR, --programs=N, --seed=N and the shape: --lines=N, --depth=N,
+   *             --iterations=N, --variables=N, --branches=P and --loops=P. --check runs each program
+   *             afterwards and compares its variables, using any of the interpreter's options
+   */
+  public static void main(String[] args) {
+    Path output = Paths.get("generated");
+    int programs = 1;
+    long seed = 1;
+    int lines = 1000;
+    int depth = 3;
+    int iterations = 10;
+    int variables = 26;
+    int branches = 20;
+    int loops = 10;
+    boolean check = false;
+    List<String> rest = new ArrayList<>();
+
+    try {
+      for (String arg : args) {
+        String value = arg.substring(arg.indexOf('=') + 1);
+        if (arg.matches("^--output=.+$")) {
+          output = Paths.get(value);
+        } else if (arg.matches("^--programs=[1-9][0-9]{0,5}$")) {
+          programs = Integer.parseInt(value);
+        } else if (arg.matches("^--seed=[0-9]{1,18}$")) {
+          seed = Long.parseLong(value);
+        } else if (arg.matches("^--lines=[1-9][0-9]{0,8}$")) {
+          lines = Integer.parseInt(value);
+        } else if (arg.matches("^--depth=[0-9]{1,2}$")) {
+          depth = Integer.parseInt(value);
+        } else if (arg.matches("^--iterations=[0-9]{1,6}$")) {
+          iterations = Integer.parseInt(value);
+        } else if (arg.matches("^--variables=[1-9][0-9]{0,5}$")) {
+          variables = Integer.parseInt(value);
+        } else if (arg.matches("^--branches=([0-9]|[1-9][0-9]|100)$")) {
+          branches = Integer.parseInt(value);
+        } else if (arg.matches("^--loops=([0-9]|[1-9][0-9]|100)$")) {
+          loops = Integer.parseInt(value);
+        } else if (arg.equals("--check")) {
+          check = true;
+        } else if (arg.startsWith("--")) {
+          rest.add(arg);
+        } else {
+          throw new IllegalArgumentException("Invalid Argument: " + arg);
+        }
+      }
+      if (branches + loops > 100) {
+        throw new IllegalArgumentException("Invalid Argument: --branches and --loops add up to more than 100");
+      }
+      Options options = Options.parse(rest.toArray(new String[0]));
+
+      Generator generator = new Generator(lines, depth, iterations, variables, branches, loops);
+      Files.createDirectories(output);
+      boolean passed = true;
+      for (int i = 1; i <= programs; i++) {
+        Path file = output.resolve("program-" + i + ".txt");
+        String expected = generator.write(file, seed + i - 1);
+        Files.writeString(output.resolve("program-" + i + ".expected"), expected + "\n");
+        if (check) {
+          passed &= check(file, expected, options);
+        } else {
+          System.out.println(file);
+        }
+      }
+      if (!passed) {
+        System.exit(1);
+      }
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.exit(1);
+    } catch (IOException e) {
+      System.out.println("Unable to write output: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * This makes a program from a seed and writes it to a file.
+   *
+   * @param file Path of the program
+   * @param seed Seed the program is made from
+   * @return The variables the program ends with, as JSON in the order they are created
+   * @throws IOException Writing the file gone wrong
+   */
+  String write(Path file, long seed) throws IOException {
+    List<Statement> program = generate(seed);
+    try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      out.write("//Generated from seed " + seed + " with depth " + depth + " and " + iterations + " iterations\n");
+      for (Statement statement : program) {
+        statement.write(out, "");
+      }
+    }
+
+    Run state = new Run(variables + depth);
+    for (Statement statement : program) {
+      statement.run(state);
+    }
+    Map<String, Number> result = new LinkedHashMap<>();
+    for (int i = 0; i < state.count; i++) {
+      result.put(name(state.order[i]), state.values[state.order[i]]);
+    }
+    return Batch.json(result);
+  }
+
+  /**
+   * This makes the statements of a program from a seed.
+   *
+   * @param seed Seed the program is made from
+   * @return The statements at the top of the program
+   */
+  private List<Statement> generate(long seed) {
+    random = new Random(seed);
+    written = 1;
+    List<Statement> program = new ArrayList<>();
+    while (written < lines) {
+      program.add(statement(0, 0));
+    }
+    return program;
+  }
+
+  /**
+   * This makes a statement and counts its lines.
+   *
+   * @param level  Loops the statement is inside
+   * @param nested If statements the statement is inside
+   * @return The statement
+   */
+  private Statement statement(int level, int nested) {
+    int roll = random.nextInt(100);
+    if (roll < loops && level < depth) {
+      return loop(level, nested);
+    }
+    if (roll >= 100 - branches && nested < NESTED) {
+      return branch(level, nested);
+    }
+    return step();
+  }
+
+  /**
+   * This makes the statements of a loop body or section of an if, stopping early if the program
+   * already has enough lines.
+   *
+   * @param level  Loops the statements are inside
+   * @param nested If statements the statements are inside
+   * @return The statements, of which there is at least one
+   */
+  private List<Statement> body(int level, int nested) {
+    List<Statement> body = new ArrayList<>();
+    int size = 1 + random.nextInt(BODY);
+    do {
+      body.add(statement(level, nested));
+    } while (body.size() < size && written < lines);
+    return body;
+  }
+
+  /**
+   * This makes a loop, whose counter is a variable after the program's own kept for its level.
+   *
+   * @param level  Loops the new loop is inside
+   * @param nested If statements the new loop is inside
+   * @return The loop
+   */
+  private Loop loop(int level, int nested) {
+    boolean up = random.nextBoolean();
+    written += up ? 4 : 5;
+    int times = random.nextInt(iterations + 1);
+    return new Loop(variables + level, times, up, body(level + 1, nested));
+  }
+
+  /**
+   * This makes an if statement with up to two else if sections, and an else half of the time.
+   *
+   * @param level  Loops the if statement is inside
+   * @param nested If statements the new one is inside
+   * @return The if statement
+   */
+  private Branch branch(int level, int nested) {
+    int conditions = 1 + random.nextInt(3);
+    int[] compared = new int[conditions];
+    Comparison[] comparisons = new Comparison[conditions];
+    int[] literals = new int[conditions];
+    List<List<Statement>> sections = new ArrayList<>();
+    written += 2; //The if and the endif
+    for (int i = 0; i < conditions; i++) {
+      compared[i] = random.nextInt(variables);
+      comparisons[i] = Comparison.values()[random.nextInt(Comparison.values().length)];
+      literals[i] = random.nextInt(LITERAL);
+      written += i > 0 ? 1 : 0;
+      sections.add(body(level, nested + 1));
+    }
+    if (random.nextBoolean()) {
+      written += 1;
+      sections.add(body(level, nested + 1));
+    }
+    return new Branch(compared, comparisons, literals, sections);
+  }
+
+  /**
+   * This makes an arithmetic statement. Anything which can make a value larger is followed by a
+   * mod of the same variable, so the two are returned as a pair.
+   *
+   * @return The statement
+   */
+  private Statement step() {
+    int variable = random.nextInt(variables);
+    int kind = random.nextInt(10);
+    if (kind == 0) {
+      written += 1;
+      return new Step(Opcode.CLEAR, variable, -1, 0);
+    }
+    if (kind == 1) {
+      written += 1;
+      return new Step(Opcode.DIV, variable, -1, 1 + random.nextInt(100));
+    }
+    if (kind == 2) {
+      written += 1;
+      return new Step(Opcode.MOD, variable, -1, 1 + random.nextInt(MODULUS));
+    }
+
+    Opcode opcode = kind < 6 ? Opcode.INCR : kind < 9 ? Opcode.DECR : Opcode.MULT;
+    int operand = opcode != Opcode.MULT && random.nextBoolean() ? random.nextInt(variables) : -1;
+    written += 2;
+    return new Pair(new Step(opcode, variable, operand, random.nextInt(LITERAL + 1)),
+        new Step(Opcode.MOD, variable, -1, 2 + random.nextInt(MODULUS - 1)));
+  }
+
+  /**
+   * This compiles and runs a program written by the generator, and compares its variables with the
+   * ones expected, outputting how long each took.
+   *
+   * @param file     Path of the program
+   * @param expected The variables it should end with, as JSON
+   * @param options  Options the program is compiled with
+   * @return True if the variables were the ones expected
+   * @throws IOException Reading the program gone wrong
+   */
+  private static boolean check(Path file, String expected, Options options) throws IOException {
+    long start = System.nanoTime();
+    Program program = Program.compile(Files.readAllLines(file), options);
+    long compiled = System.nanoTime();
+    String actual = Batch.json(program.run(Map.of()));
+    long finished = System.nanoTime();
+
+    boolean same = actual.equals(expected);
+    System.out.printf("%s %s compile %.3f ms run %.3f ms%n", file, same ? "ok" : "different",
+        (compiled - start) / 1e6, (finished - compiled) / 1e6);
+    if (!same) {
+      System.out.println("  expected " + expected);
+      System.out.println("  actual   " + actual);
+    }
+    return same;
+  }
+
+  /**
+   * This makes a variable name from a number, since names can only contain letters.
+   *
+   * @param number Number of the variable
+   * @return A name made of letters
+   */
+  private static String name(int number) {
+    StringBuilder name = new StringBuilder("V");
+    do {
+      name.append((char) ('a' + number % 26));
+      number /= 26;
+    } while (number > 0);
+    return name.toString();
+  }
+}
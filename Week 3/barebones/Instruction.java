@@ -0,0 +1,206 @@
+package barebones;
+
+/**
+ * This stores a single parsed line of a program.
+ * Instructions are immutable so a parsed program can be run any number of times.
+ *
+ * <p>An instruction has up to two operands, a and b. An operand is either a variable,
+ * in which case its name and slot in the register file are stored, or an integer literal,
+ * in which case the name is null, the slot is -1 and the value is stored.
+ *
+ * <p>Control flow instructions also store the addresses they can jump to, which are filled in by
+ * the {@link Linker} once the whole program has been parsed.
+ *
+ * <p>A while loop which has been replaced by its closed form is a single loop instruction, with the
+ * while's operands and a {@link LoopSummary} of what the loop does. Instructions made by joining
+ * several instructions together record how many they replaced.
+ *
+ * <p>A call to a subroutine which was not inlined stores the subroutine and the variables passed
+ * to it, and the number of the copy of the subroutine's body it runs in its first operand's value.
+ *
+ * <p>An instruction on a whole array, or on the element of an array chosen by a variable, stores
+ * the array in an {@link ArrayOperation}, and its other variables in its operands. An element
+ * chosen by a literal, such as {@code A[3]}, is an ordinary variable.
+ */
+public final class Instruction {
+  final Opcode opcode;
+  final String a; //Name of the first operand, null if it is a literal
+  final int aSlot; //Register of the first operand, -1 if it is a literal or not resolved
+  final long aValue; //Value of the first operand if it is a literal
+  final String b; //Name of the second operand, null if it is a literal
+  final int bSlot; //Register of the second operand, -1 if it is a literal or not resolved
+  final long bValue; //Value of the second operand if it is a literal
+  final Comparison operator; //Comparison used by if, else if and count, otherwise null
+  final int line; //Line number in the source file, starting at 1
+  final int jump; //Address to go to when a condition fails, -1 if not linked
+  final int exit; //Address after the endif for else if and else, -1 if not linked
+  final boolean define; //True if a variable used might not exist yet when this runs
+  final LoopSummary summary; //Closed form of a summarised loop, otherwise null
+  final long immediate; //Amount subtracted from operand a by a decr end, otherwise 0
+  final int fused; //Number of extra instructions this one replaced
+  final String[] arguments; //Name of the subroutine then the variables passed to it by a call, otherwise null
+  final ArrayOperation array; //Array used by an array instruction, otherwise null
+
+  /**
+   * This creates a new instruction.
+   *
+   * @param opcode   Type of instruction
+   * @param a        Name of the first operand, or null if it is a literal
+   * @param aValue   Value of the first operand if it is a literal
+   * @param b        Name of the second operand, or null if it is a literal
+   * @param bValue   Value of the second operand if it is a literal
+   * @param operator Comparison used by if and else if
+   * @param line     Line number in the source file
+   */
+  Instruction(Opcode opcode, String a, long aValue, String b, long bValue, Comparison operator, int line) {
+    this(opcode, a, -1, aValue, b, -1, bValue, operator, line, -1, -1, true, null, 0, 0, null, null);
+  }
+
+  /**
+   * This creates a new instruction, which may use an array.
+   *
+   * @param opcode   Type of instruction
+   * @param a        Name of the first operand, or null if it is a literal
+   * @param aValue   Value of the first operand if it is a literal
+   * @param b        Name of the second operand, or null if it is a literal
+   * @param bValue   Value of the second operand if it is a literal
+   * @param operator Comparison used by if, else if and count
+   * @param array    Array used by an array instruction, or null
+   * @param line     Line number in the source file
+   */
+  Instruction(Opcode opcode, String a, long aValue, String b, long bValue, Comparison operator,
+              ArrayOperation array, int line) {
+    this(opcode, a, -1, aValue, b, -1, bValue, operator, line, -1, -1, true, null, 0, 0, null, array);
+  }
+
+  /**
+   * This creates an instruction which replaces several others.
+   *
+   * @param opcode    Type of instruction
+   * @param a         Name of the first operand, or null if it is a literal
+   * @param aValue    Value of the first operand if it is a literal
+   * @param b         Name of the second operand, or null if it is a literal
+   * @param bValue    Value of the second operand if it is a literal
+   * @param immediate Amount subtracted from operand a by a decr end
+   * @param line      Line number in the source file
+   * @param fused     Number of extra instructions this one replaced
+   */
+  Instruction(Opcode opcode, String a, long aValue, String b, long bValue, long immediate, int line, int fused) {
+    this(opcode, a, -1, aValue, b, -1, bValue, null, line, -1, -1, true, null, immediate, fused, null, null);
+  }
+
+  /**
+   * This creates a loop instruction, which replaces a whole while loop with its closed form.
+   *
+   * @param loop    While instruction of the loop being replaced
+   * @param summary Closed form of the loop
+   */
+  Instruction(Instruction loop, LoopSummary summary) {
+    this(Opcode.LOOP, loop.a, -1, loop.aValue, loop.b, -1, loop.bValue, null, loop.line, -1, -1, true, summary,
+        0, 0, null, null);
+  }
+
+  /**
+   * This creates a call to a subroutine.
+   *
+   * @param arguments Name of the subroutine, then the variables passed to it
+   * @param body      Number of the copy of the body it runs, where the main program is 0
+   * @param line      Line number in the source file
+   */
+  Instruction(String[] arguments, long body, int line) {
+    this(Opcode.CALL, null, -1, body, null, -1, 0, null, line, -1, -1, true, null, 0, 0, arguments, null);
+  }
+
+  /**
+   * This creates an instruction with every field given, as read back by the {@link ProgramCache}.
+   */
+  Instruction(Opcode opcode, String a, int aSlot, long aValue, String b, int bSlot, long bValue,
+              Comparison operator, int line, int jump, int exit, boolean define, LoopSummary summary,
+              long immediate, int fused, String[] arguments, ArrayOperation array) {
+    this.opcode = opcode;
+    this.a = a;
+    this.aSlot = aSlot;
+    this.aValue = aValue;
+    this.b = b;
+    this.bSlot = bSlot;
+    this.bValue = bValue;
+    this.operator = operator;
+    this.line = line;
+    this.jump = jump;
+    this.exit = exit;
+    this.define = define;
+    this.summary = summary;
+    this.immediate = immediate;
+    this.fused = fused;
+    this.arguments = arguments;
+    this.array = array;
+  }
+
+  /**
+   * This creates a copy of the instruction with its jump addresses filled in.
+   *
+   * @param jump Address to go to when a condition fails
+   * @param exit Address after the endif for else if and else
+   * @return The linked instruction
+   */
+  Instruction link(int jump, int exit) {
+    return new Instruction(opcode, a, aSlot, aValue, b, bSlot, bValue, operator, line, jump, exit, define,
+        summary, immediate, fused, arguments, array);
+  }
+
+  /**
+   * This creates a copy of the instruction with the same jump addresses but different operands.
+   * It is used by the linker to give an end its while's condition.
+   *
+   * @param other Instruction to take the operands from
+   * @return The new instruction
+   */
+  Instruction operands(Instruction other) {
+    return new Instruction(opcode, other.a, other.aSlot, other.aValue, other.b, other.bSlot, other.bValue,
+        other.operator, line, jump, exit, define, summary, immediate, fused, arguments, array);
+  }
+
+  /**
+   * This creates a copy of the instruction with its variables resolved to registers.
+   *
+   * @param aSlot   Register of the first operand, or -1 if it is a literal
+   * @param bSlot   Register of the second operand, or -1 if it is a literal
+   * @param define  True if a variable used might not exist yet when this runs
+   * @param summary Closed form of a summarised loop with its variables resolved, otherwise null
+   * @param array   Array used by an array instruction with its slots resolved, otherwise null
+   * @return The resolved instruction
+   */
+  Instruction resolve(int aSlot, int bSlot, boolean define, LoopSummary summary, ArrayOperation array) {
+    return new Instruction(opcode, a, aSlot, aValue, b, bSlot, bValue, operator, line, jump, exit, define,
+        summary, immediate, fused, arguments, array);
+  }
+
+  @Override
+  public String toString() {
+    String first = a != null ? a : Long.toString(aValue);
+    String second = b != null ? b : Long.toString(bValue);
+
+    return switch (opcode) {
+      case CLEAR -> "clear " + first + ";";
+      case INCR, DECR, MULT, DIV, MOD -> opcode.name().toLowerCase() + " " + first + " " + second + ";";
+      case WHILE -> "while " + first + " not " + second + " do;";
+      case END -> "end;";
+      case IF -> "if " + first + " " + operator + " " + second + ";";
+      case ELSE_IF -> "else if " + first + " " + operator + " " + second + ";";
+      case ELSE -> "else;";
+      case ENDIF -> "endif;";
+      case LOOP -> "while " + first + " not " + second + " do; (summarised)";
+      case SET -> "set " + first + " " + second + ";";
+      case DECR_END -> "decr " + first + " " + immediate + "; end;";
+      case CALL -> "call " + String.join(" ", arguments) + ";";
+      case RETURN -> "return;";
+      case ARRAY -> "array " + array.name + " " + array.length + ";";
+      case EACH -> array.arithmetic.name().toLowerCase() + " " + array.name
+          + (array.arithmetic == Opcode.CLEAR ? "" : " " + (array.other != null ? array.other : second)) + ";";
+      case COUNT -> "count " + first + " " + array.name + " " + operator + " " + second + ";";
+      case STORE -> array.arithmetic.name().toLowerCase() + " " + array.element()
+          + (array.arithmetic == Opcode.CLEAR ? "" : " " + second) + ";";
+      case LOAD -> array.arithmetic.name().toLowerCase() + " " + first + " " + array.element() + ";";
+    };
+  }
+}
@@ -0,0 +1,275 @@
+package barebones;
+
+import java.io.*;
+import java.util.*;
+
+public class Interpreter {
+  /**
+   * This is used to get commandline inputs and start the interpreter.
+   *
+   * @param args Used to input commandline arguments, --engine=bytecode or --engine=tiered selects
+   *             a compiling engine, --tier-threshold=N sets when the tiered engine compiles a loop,
+   *             --numbers=long or --numbers=big selects 64 bit or unlimited values, --trace=N sets
+   *             how many steps are output with the program info, --record=FILE records every step
+   *             for replaying with Replay, --profile reports the hottest lines and loops,
+   *             --profile=FILE also writes them as folded stacks for a flame graph,
+   *             --max-steps=N and --time-limit=MS stop a run at the next loop back edge once it
+   *             has been charged N steps or run for MS milliseconds, --checkpoint=FILE saves
+   *             the run every --checkpoint-every=MS milliseconds and --resume=FILE carries on
+   *             from a checkpoint, --cache=DIR keeps compiled programs, --parallel runs
+   *             independent regions at the same time and --no-optimise turns off the
+   *             optimisation passes, which --report reports on
+   */
+  public static void main(String[] args) {
+    try {
+      Interpreter myInterpreter = new Interpreter(Options.parse(args));
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * This is used to run the code with the reference interpreter.
+   */
+  public Interpreter() {
+    this(new Options());
+  }
+
+  /**
+   * This is used to run the code and call the methods required
+   *
+   * @param options Commandline options, including which engine runs the code
+   */
+  public Interpreter(Options options) {
+    BufferedReader reader = new BufferedReader(new InputStreamReader((System.in)));
+
+    try {
+      //This is used get and store the program code
+      List<String> program = getFile(reader);
+      //This is used to get and store the users settings
+      int[] settings = getSettings(reader);
+
+      //This parses the program once, so no regex is used while it runs, then links its jumps
+      Program compiled = Program.compile(program, options);
+      //This stores variables in a register file, indexed by their slot
+      State state = new State(compiled);
+      //A run carried on from a checkpoint starts with its variables, at the loop it was saved in
+      int start = 0;
+      if (options.resume != null) {
+        start = Checkpoint.restore(compiled, options.resume, state);
+      }
+
+      //Outputting data and stepping need the reference interpreter, since they run after every instruction
+      Tracer tracer = null;
+      Executor.Listener listener = null;
+      if (settings[1] == 1) {
+        listener = (address, programCounter, instruction, current) -> {
+          output(current.variables(compiled));
+          System.out.println("PC: " + programCounter);
+          System.out.println("Line: " + instruction);
+          System.out.println("PRESS ENTER TO CONTINUE");
+          try {
+            reader.readLine();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        };
+      } else if (settings[0] == 1) {
+        //Without stepping, the last steps are kept in a ring buffer and output at the end
+        tracer = new Tracer(compiled, options.trace);
+        listener = tracer;
+      }
+      //Recording keeps every step in a file, as well as anything else listening
+      Recorder recorder = null;
+      if (options.record != null) {
+        recorder = new Recorder(compiled, options.record);
+        listener = Executor.Listener.both(listener, recorder);
+      }
+      //Profiling counts every step, and times each loop from when it starts until it finishes
+      Profiler profiler = null;
+      if (options.profile) {
+        profiler = new Profiler(compiled);
+        listener = Executor.Listener.both(listener, profiler);
+      }
+      Executor executor = new Executor(compiled, options, listener);
+      if (executor.fallback != null) {
+        System.out.println("Unable to compile program, using interpreter: " + executor.fallback);
+      }
+
+      try {
+        executor.run(state, start);
+      } finally {
+        if (tracer != null) {
+          tracer.dump(System.out);
+        }
+        if (recorder != null) {
+          recorder.close();
+          System.out.println("Recorded " + recorder.steps() + " steps to " + options.record);
+        }
+      }
+
+      reader.close();
+      if (state.stopped != null) {
+        //Stopped by a limit: the variables it reached are still output
+        System.out.println(Result.message(state.stopped, state.charged));
+      }
+      output(state.variables(compiled)); //Outputs final variable values
+      if (options.report) {
+        report(compiled, state, executor.interpreted());
+      }
+      if (profiler != null) {
+        profiler.report(System.out);
+        if (options.folded != null) {
+          profiler.folded(options.folded);
+          System.out.println("Folded stacks written to " + options.folded);
+        }
+      }
+
+    } catch (IllegalArgumentException e) {
+      //Displays error for unknown code
+      System.out.println(e.getMessage());
+      System.exit(1);
+    } catch (ArithmeticException e) {
+      //Displays error for dividing by zero or a value too large in the long mode
+      System.out.println(e.getMessage());
+      System.exit(1);
+    } catch (CallDepthException e) {
+      //Displays error for too many calls running at once
+      System.out.println(e.getMessage());
+      System.exit(1);
+    } catch (IllegalStateException e) {
+      //Displays error for a checkpoint which could not be written
+      System.out.println(e.getMessage());
+      System.exit(1);
+    } catch (Exception e) {
+      System.out.println("Error occurred");
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  /**
+   * This outputs what the optimisation passes removed from the program.
+   *
+   * @param program     Program which was run
+   * @param state       Variables used by the program, which also count its dispatches
+   * @param interpreted True if every instruction was dispatched by the interpreter
+   */
+  private void report(Program program, State state, boolean interpreted) {
+    System.out.println(" - - - - Optimiser - - - - ");
+    System.out.println("Instructions: " + program.instructions.length);
+    for (Map.Entry<String, Integer> entry : program.report.entrySet()) {
+      System.out.println(entry.getKey() + ": " + entry.getValue());
+    }
+    if (interpreted) {
+      System.out.println("Dispatches: " + state.dispatched);
+      System.out.println("Dispatches removed: " + state.removed);
+    }
+  }
+
+  /**
+   * This method will prompt the user for a file name.
+   * It will then check and validate the file is valid.
+   *
+   * @param reader This is used to read user inputs
+   * @return This will return the program as a List<String>
+   * @throws IOException File read or user input gone wrong
+   */
+  private List<String> getFile(BufferedReader reader) throws IOException {
+    String choice;
+    List<String> code = new ArrayList<>();
+
+    System.out.println("" +
+        "- - - - - - - - - - - - - -\n   Crossy's Interpreter\n- - - - - - - - - - - - - -");
+    do {
+      //This section will get the name of the file to be run.
+      System.out.print("Use default file 'code.txt' (y or file name)\n> ");
+      choice = reader.readLine();
+
+      //Check if choice is y and fill default value, and check it is not empty
+      if (choice.toLowerCase().equals("y") || choice.toLowerCase().equals("yes")) {
+        choice = "code.txt";
+      } else if (choice.equals("")) {
+        continue;
+      }
+
+      if (choice.matches(".+\\.txt$")) { //Verify it is a .txt file
+        if (new File(choice).isFile()) { //Checks if file exists
+          //This will read the file and put it into program
+          BufferedReader file = new BufferedReader(new FileReader(choice));
+          String line;
+          while ((line = file.readLine()) != null) {
+            code.add(line);
+          }
+          file.close();
+        } else {
+          System.out.println(choice + " is an invalid file.");
+        }
+      } else {
+        System.out.println(choice + " is an invalid filetype.");
+      }
+    } while (code.isEmpty());
+
+    return code;
+  }
+
+  /**
+   * This method will get values for the settings inside the program.
+   * (ie, step through program and output variables).
+   *
+   * @param reader This is used to read user inputs
+   * @return This will return an array of flags, to denote on or off
+   * @throws IOException User input gone wrong
+   */
+  private int[] getSettings(BufferedReader reader) throws IOException {
+    int[] settings = {-1, -1}; //{Output, Step}
+    String temp;
+
+    System.out.println(" - - - - Variables - - - - ");
+    do {
+      //Gets user input
+      System.out.print("Output program info (y/n)\n> ");
+      temp = reader.readLine();
+
+      //Checks user input is valid
+      if (temp.toLowerCase().equals("y") || temp.toLowerCase().equals("yes")) {
+        settings[0] = 1;
+
+        do {
+          //Gets user input
+          System.out.print("Step Program (y/n)\n> ");
+          temp = reader.readLine();
+
+          //Checks user input is valid
+          if (temp.toLowerCase().equals("y") || temp.toLowerCase().equals("yes")) {
+            settings[1] = 1;
+          } else if (temp.toLowerCase().equals("n") || temp.toLowerCase().equals("no")) {
+            settings[1] = 0;
+          }
+        } while (settings[1] == -1);
+
+      } else if (temp.toLowerCase().equals("n") || temp.toLowerCase().equals("no")) {
+        settings[0] = 0;
+        settings[1] = 0;
+      } else {
+        System.out.println("Err:" + temp);
+      }
+    } while (settings[0] == -1);
+
+    return settings;
+  }
+
+  /**
+   * This method will iterate though the dictionary of variables and output name and value.
+   *
+   * @param variables This stores the variables which will be displayed
+   */
+  private void output(Map<String, Number> variables) {
+    System.out.println(" - - - - Variables - - - - ");
+    for (String key : variables.keySet()) {
+      System.out.println(key + ": " + variables.get(key));
+    }
+  }
+
+}
@@ -0,0 +1,133 @@
+package barebones;
+
+import java.util.*;
+
+/**
+ * This is the structural pass of the interpreter.
+ * It matches every while to its end, and every if to its else ifs, else and endif, then stores the
+ * addresses in the instructions so each jump is a single array index while the program runs.
+ *
+ * <p>The addresses stored are:
+ * <ul>
+ *   <li>while: the address after its end, used when the condition is met</li>
+ *   <li>end: the address after its while, used when the condition is not met. The end also gets a
+ *   copy of the while's operands so it can check the condition itself.</li>
+ *   <li>if and else if: jump is the address of the next else if, else or endif</li>
+ *   <li>else if and else: exit is the address after the endif, used when a previous section ran</li>
+ *   <li>call: the address of the copy of the subroutine's body it runs, which starts after the
+ *   return ending the main program or the copy before it</li>
+ * </ul>
+ */
+public final class Linker {
+  private Linker() {
+  }
+
+  /**
+   * This will link the control flow instructions of a program.
+   * Blocks which are not closed, or closed by the wrong instruction, are rejected.
+   *
+   * @param instructions This stores the unlinked program
+   * @return This will return the linked program
+   * @throws IllegalArgumentException The blocks in the program do not match up
+   */
+  public static Instruction[] link(Instruction[] instructions) {
+    Instruction[] linked = instructions.clone();
+    //This is used to store the addresses of the blocks which are currently open
+    Deque<Integer> blocks = new ArrayDeque<>();
+    //This is used to store the addresses of every section of each open if statement
+    Deque<List<Integer>> sections = new ArrayDeque<>();
+    //This is used to store the address each copy of a subroutine's body starts at, after the main program
+    List<Integer> bodies = new ArrayList<>(List.of(0));
+    for (int i = 0; i < linked.length; i++) {
+      if (linked[i].opcode == Opcode.RETURN) {
+        bodies.add(i + 1);
+      }
+    }
+
+    for (int i = 0; i < linked.length; i++) {
+      Instruction instruction = linked[i];
+
+      switch (instruction.opcode) {
+        case WHILE -> blocks.push(i);
+
+        case END, DECR_END -> {
+          int start = open(blocks, linked, i, Opcode.WHILE);
+          Instruction loop = linked[start];
+          linked[start] = loop.link(i + 1, -1);
+          linked[i] = instruction.operands(loop).link(start + 1, -1);
+        }
+
+        case IF -> {
+          blocks.push(i);
+          sections.push(new ArrayList<>(List.of(i)));
+        }
+
+        case ELSE_IF, ELSE -> {
+          open(blocks, linked, i, Opcode.IF);
+          List<Integer> section = sections.peek();
+          if (linked[section.get(section.size() - 1)].opcode == Opcode.ELSE) {
+            throw error(instruction, "follows else");
+          }
+          section.add(i);
+        }
+
+        case ENDIF -> {
+          open(blocks, linked, i, Opcode.IF);
+          blocks.pop();
+          List<Integer> section = sections.pop();
+          section.add(i);
+
+          //Each section jumps to the next one when its condition fails, and past the endif when a
+          //previous section has run
+          for (int j = 0; j < section.size() - 1; j++) {
+            int address = section.get(j);
+            Opcode opcode = linked[address].opcode;
+            int jump = opcode == Opcode.ELSE ? -1 : section.get(j + 1);
+            int exit = opcode == Opcode.IF ? -1 : i + 1;
+            linked[address] = linked[address].link(jump, exit);
+          }
+        }
+
+        case CALL -> linked[i] = instruction.link(bodies.get((int) instruction.aValue), -1);
+
+        default -> {
+        }
+      }
+    }
+
+    if (!blocks.isEmpty()) {
+      throw error(linked[blocks.peek()], "is never closed");
+    }
+
+    return linked;
+  }
+
+  /**
+   * This checks the innermost open block is of the expected type, and removes it if it is a loop.
+   *
+   * @param blocks       Addresses of the open blocks
+   * @param instructions This stores the program
+   * @param address      Address of the instruction closing or continuing the block
+   * @param expected     The type of block the instruction belongs to
+   * @return The address of the start of the block
+   */
+  private static int open(Deque<Integer> blocks, Instruction[] instructions, int address, Opcode expected) {
+    Instruction instruction = instructions[address];
+    if (blocks.isEmpty() || instructions[blocks.peek()].opcode != expected) {
+      throw error(instruction, "has no matching " + expected.name().toLowerCase());
+    }
+    return expected == Opcode.WHILE ? blocks.pop() : blocks.peek();
+  }
+
+  /**
+   * This creates the error for an instruction in the wrong place.
+   *
+   * @param instruction The instruction in the wrong place
+   * @param problem     What is wrong with it
+   * @return The error to throw
+   */
+  private static IllegalArgumentException error(Instruction instruction, String problem) {
+    return new IllegalArgumentException("Invalid Structure: '" + instruction + "' on line "
+        + instruction.line + " " + problem);
+  }
+}
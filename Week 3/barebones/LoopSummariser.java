@@ -0,0 +1,302 @@
+package barebones;
+
+import java.util.*;
+
+/**
+ * This is the optimisation pass which replaces counting loops with their closed form.
+ *
+ * <p>A loop can be summarised when its body is only arithmetic which is affine, meaning each new
+ * value is a sum of multiples of old values plus a constant, and its counter changes by exactly 1
+ * each time round. Clearing, adding, subtracting and multiplying by a constant are affine. An
+ * inner loop which has already been summarised is affine too if it only adds constants, since it
+ * then adds a multiple of its own counter, and so are sets made by the constant folder. Loops
+ * containing if statements, division, modulo, other multiplication or calls are left as they are.
+ *
+ * <p>A variable is only created once an instruction using it runs, so a loop is also left alone if
+ * an inner loop might create a variable in a different order to the closed form.
+ */
+final class LoopSummariser {
+  private final Instruction[] instructions;
+
+  private LoopSummariser(Instruction[] instructions) {
+    this.instructions = instructions;
+  }
+
+  /**
+   * This will summarise every loop in a program which can be summarised.
+   *
+   * @param instructions This stores the linked program
+   * @return This will return the unlinked optimised program
+   */
+  static Instruction[] summarise(Instruction[] instructions) {
+    List<Instruction> optimised = new ArrayList<>(instructions.length);
+    new LoopSummariser(instructions).block(0, optimised, new HashSet<>());
+    return optimised.toArray(new Instruction[0]);
+  }
+
+  /**
+   * This optimises the instructions of a block, until the end of the program or of the block.
+   *
+   * @param address   Address of the first instruction in the block
+   * @param optimised Used to store the optimised instructions
+   * @param known     Variables which definitely exist at the start of the block
+   * @return Address of the end, else if, else or endif which finishes the block
+   */
+  private int block(int address, List<Instruction> optimised, Set<String> known) {
+    while (address < instructions.length) {
+      Instruction instruction = instructions[address];
+
+      switch (instruction.opcode) {
+        case END, DECR_END, ELSE_IF, ELSE, ENDIF -> {
+          return address;
+        }
+
+        case WHILE -> {
+          addOperands(known, instruction);
+          List<Instruction> body = new ArrayList<>();
+          int end = block(address + 1, body, new HashSet<>(known));
+
+          Instruction loop = loop(instruction, body, known);
+          if (loop != null) {
+            optimised.add(loop);
+          } else {
+            optimised.add(instruction);
+            optimised.addAll(body);
+            optimised.add(instructions[end]);
+          }
+          address = end;
+        }
+
+        case IF -> {
+          addOperands(known, instruction);
+          optimised.add(instruction);
+          //Variables which exist after every condition so far has been checked
+          Set<String> conditions = new HashSet<>(known);
+          address = block(address + 1, optimised, new HashSet<>(conditions));
+
+          while (instructions[address].opcode != Opcode.ENDIF) {
+            Instruction section = instructions[address];
+            addOperands(conditions, section);
+            optimised.add(section);
+            address = block(address + 1, optimised, new HashSet<>(conditions));
+          }
+          optimised.add(instructions[address]);
+        }
+
+        //The next copy of a subroutine's body can be called before any variable exists
+        case RETURN -> {
+          optimised.add(instruction);
+          known.clear();
+        }
+
+        default -> {
+          addOperands(known, instruction);
+          optimised.add(instruction);
+        }
+      }
+
+      address++;
+    }
+    return address;
+  }
+
+  /**
+   * This tries to summarise a loop.
+   *
+   * @param loop  While instruction of the loop
+   * @param body  Optimised instructions of the loop's body
+   * @param known Variables which definitely exist when the loop starts
+   * @return The loop instruction, or null if the loop cannot be summarised
+   */
+  private static Instruction loop(Instruction loop, List<Instruction> body, Set<String> known) {
+    //Gives every variable used an index, starting with the counter and limit
+    Map<String, Integer> indexes = new LinkedHashMap<>();
+    index(indexes, loop.a);
+    index(indexes, loop.b);
+    for (Instruction instruction : body) {
+      index(indexes, instruction.a);
+      index(indexes, instruction.b);
+      if (instruction.summary != null) {
+        for (String name : instruction.summary.names) {
+          index(indexes, name);
+        }
+      }
+    }
+    int size = indexes.size();
+
+    //Each row is a variable's value as an affine function of the values at the start of the loop
+    int[][] rows = new int[size + 1][size + 1];
+    for (int i = 0; i <= size; i++) {
+      rows[i][i] = 1;
+    }
+
+    Set<String> defined = new HashSet<>(known);
+    List<Integer> first = new ArrayList<>();
+
+    for (Instruction instruction : body) {
+      create(instruction.a, indexes, defined, first);
+      create(instruction.b, indexes, defined, first);
+      int[] row = instruction.a != null ? rows[indexes.get(instruction.a)] : null;
+      int[] operand = operand(rows, indexes, instruction.b, instruction.bValue, size);
+
+      switch (instruction.opcode) {
+        case CLEAR -> Arrays.fill(row, 0);
+        case SET -> System.arraycopy(operand, 0, row, 0, row.length);
+        case INCR -> add(row, operand, 1);
+        case DECR -> add(row, operand, -1);
+        case MULT -> {
+          if (!constant(operand, size)) {
+            return null;
+          }
+          for (int j = 0; j <= size; j++) {
+            row[j] *= operand[size];
+          }
+        }
+        case LOOP -> {
+          LoopSummary inner = instruction.summary;
+          if (!inner.translation) {
+            return null;
+          }
+          for (int index : inner.first) {
+            if (!defined.contains(inner.names[index])) {
+              return null;
+            }
+          }
+
+          //The inner loop adds a constant times the number of times round, which is affine
+          int[] counter = rows[indexes.get(instruction.a)];
+          int[] times = new int[size + 1];
+          add(times, counter, -inner.step);
+          add(times, operand, inner.step);
+          for (int i = 0; i < inner.names.length; i++) {
+            add(rows[indexes.get(inner.names[i])], times, inner.matrix[i][inner.names.length]);
+          }
+        }
+        default -> {
+          return null;
+        }
+      }
+    }
+
+    //The counter must change by exactly 1 each time round, and a variable limit must not change
+    int counter = indexes.get(loop.a);
+    int[] row = rows[counter].clone();
+    int step = row[size];
+    row[size] = 0;
+    if ((step != 1 && step != -1) || !Arrays.equals(row, unit(counter, size))) {
+      return null;
+    }
+    if (loop.b != null) {
+      int limit = indexes.get(loop.b);
+      if (limit == counter || !Arrays.equals(rows[limit], unit(limit, size))) {
+        return null;
+      }
+    }
+
+    String[] names = indexes.keySet().toArray(new String[0]);
+    int[] order = first.stream().mapToInt(Integer::intValue).toArray();
+    return new Instruction(loop, new LoopSummary(names, null, rows, counter, step, order));
+  }
+
+  /**
+   * This gets an operand as an affine function of the values at the start of the loop.
+   *
+   * @param rows    Current value of each variable
+   * @param indexes Index of each variable
+   * @param name    Name of the variable, or null if the operand is a literal
+   * @param literal Value of the operand if it is a literal
+   * @param size    Number of variables
+   * @return The operand's value
+   */
+  private static int[] operand(int[][] rows, Map<String, Integer> indexes, String name, long literal, int size) {
+    if (name != null) {
+      return rows[indexes.get(name)].clone();
+    }
+    int[] row = new int[size + 1];
+    row[size] = (int) literal;
+    return row;
+  }
+
+  /**
+   * This adds a multiple of one affine function to another, wrapping like an int.
+   *
+   * @param row      Function being added to
+   * @param operand  Function being added
+   * @param multiple Times to add it
+   */
+  private static void add(int[] row, int[] operand, int multiple) {
+    for (int j = 0; j < row.length; j++) {
+      row[j] += multiple * operand[j];
+    }
+  }
+
+  /**
+   * This checks if an affine function is a constant, so does not depend on any variable.
+   *
+   * @param row  Function to check
+   * @param size Number of variables
+   * @return True if it is a constant
+   */
+  private static boolean constant(int[] row, int size) {
+    for (int j = 0; j < size; j++) {
+      if (row[j] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * This creates the affine function for a variable which is not changed.
+   *
+   * @param index Index of the variable
+   * @param size  Number of variables
+   * @return The function
+   */
+  private static int[] unit(int index, int size) {
+    int[] row = new int[size + 1];
+    row[index] = 1;
+    return row;
+  }
+
+  /**
+   * This gives a variable the next index if it does not have one.
+   *
+   * @param indexes Index of each variable
+   * @param name    Name of the variable, or null for a literal
+   */
+  private static void index(Map<String, Integer> indexes, String name) {
+    if (name != null) {
+      indexes.putIfAbsent(name, indexes.size());
+    }
+  }
+
+  /**
+   * This records the first time round the loop creates a variable, if it does not already exist.
+   *
+   * @param name    Name of the variable, or null for a literal
+   * @param indexes Index of each variable
+   * @param defined Variables which exist so far
+   * @param first   Indexes of the variables created, in order
+   */
+  private static void create(String name, Map<String, Integer> indexes, Set<String> defined, List<Integer> first) {
+    if (name != null && defined.add(name)) {
+      first.add(indexes.get(name));
+    }
+  }
+
+  /**
+   * This adds the variables used by an instruction.
+   *
+   * @param known       Variables which exist
+   * @param instruction Instruction whose variables are added
+   */
+  private static void addOperands(Set<String> known, Instruction instruction) {
+    if (instruction.a != null) {
+      known.add(instruction.a);
+    }
+    if (instruction.b != null) {
+      known.add(instruction.b);
+    }
+  }
+}
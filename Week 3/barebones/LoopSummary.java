@@ -0,0 +1,174 @@
+package barebones;
+
+import java.util.*;
+
+/**
+ * This stores the closed form of a summarised while loop.
+ *
+ * <p>One time round the loop is an affine map: each variable's new value is a sum of multiples of
+ * the variables' old values plus a constant. It is stored as a matrix with a row and column for
+ * each variable used, and a final row and column for the constant. The loop counter changes by
+ * exactly 1 each time round, so the number of times round is known as soon as the loop starts, and
+ * running the whole loop is the matrix raised to that power. This is worked out by repeated
+ * squaring, so it takes at most 32 steps however many times the loop would have gone round.
+ *
+ * <p>All arithmetic wraps like an int, which is also how the counter reaches its limit from the
+ * wrong side, so the result is exactly what running the loop would give.
+ */
+final class LoopSummary {
+  final String[] names; //Name of each variable used by the loop
+  final int[] slots; //Slot of each variable used by the loop, null until resolved
+  final int[][] matrix; //Effect of one time round the loop, with the constant last
+  final int counter; //Index of the loop counter
+  final int step; //What the counter changes by each time round, 1 or -1
+  final int[] first; //Indexes of the variables created the first time round, in order
+  final boolean translation; //True if every variable only has a constant added each time round
+
+  /**
+   * This creates the closed form of a loop.
+   *
+   * @param names   Name of each variable used by the loop
+   * @param slots   Slot of each variable, or null if not resolved
+   * @param matrix  Effect of one time round the loop
+   * @param counter Index of the loop counter
+   * @param step    What the counter changes by each time round
+   * @param first   Indexes of the variables created the first time round
+   */
+  LoopSummary(String[] names, int[] slots, int[][] matrix, int counter, int step, int[] first) {
+    this.names = names;
+    this.slots = slots;
+    this.matrix = matrix;
+    this.counter = counter;
+    this.step = step;
+    this.first = first;
+
+    boolean translation = true;
+    for (int i = 0; i < names.length; i++) {
+      for (int j = 0; j < names.length; j++) {
+        translation &= matrix[i][j] == (i == j ? 1 : 0);
+      }
+    }
+    this.translation = translation;
+  }
+
+  /**
+   * This creates a copy of the summary with its variables resolved to slots.
+   *
+   * @param slots Slots given to each variable of the program
+   * @return The resolved summary
+   */
+  LoopSummary resolve(Map<String, Integer> slots) {
+    int[] resolved = new int[names.length];
+    for (int i = 0; i < names.length; i++) {
+      resolved[i] = slots.get(names[i]);
+    }
+    return new LoopSummary(names, resolved, matrix, counter, step, first);
+  }
+
+  /**
+   * This works out how many times the loop goes round.
+   * The counter reaches the limit from the wrong side by wrapping around, like an int.
+   *
+   * @param counter Value of the loop counter when the loop starts
+   * @param limit   Value the counter is compared against
+   * @return Times round the loop, between 0 and 2^32 - 1
+   */
+  long count(long counter, long limit) {
+    return Integer.toUnsignedLong((int) (step < 0 ? counter - limit : limit - counter));
+  }
+
+  /**
+   * This runs the whole loop, creating any variables it would have created.
+   *
+   * @param instruction Loop instruction, whose operands are the counter and limit
+   * @param state       Variables used by the program
+   */
+  void apply(Instruction instruction, State state) {
+    long[] values = state.values;
+    if (instruction.define) {
+      state.define(instruction);
+    }
+
+    long times = count(values[instruction.aSlot],
+        instruction.bSlot == -1 ? instruction.bValue : values[instruction.bSlot]);
+    if (times == 0) {
+      return;
+    }
+    for (int index : first) {
+      state.define(slots[index]);
+    }
+
+    int size = names.length;
+    if (translation) {
+      //Every variable just has a constant added each time round
+      for (int i = 0; i < size; i++) {
+        values[slots[i]] = (int) values[slots[i]] + matrix[i][size] * (int) times;
+      }
+      return;
+    }
+
+    int[] vector = new int[size + 1];
+    for (int i = 0; i < size; i++) {
+      vector[i] = (int) values[slots[i]];
+    }
+    vector[size] = 1;
+
+    //Applies the matrix raised to the power of times, by repeated squaring
+    int[][] power = matrix;
+    while (times != 0) {
+      if ((times & 1) != 0) {
+        vector = multiply(power, vector);
+      }
+      times >>>= 1;
+      if (times != 0) {
+        power = multiply(power, power);
+      }
+    }
+
+    for (int i = 0; i < size; i++) {
+      values[slots[i]] = vector[i];
+    }
+  }
+
+  /**
+   * This multiplies a matrix by a vector, wrapping like an int.
+   *
+   * @param matrix Matrix to multiply by
+   * @param vector Vector being multiplied
+   * @return The product
+   */
+  private static int[] multiply(int[][] matrix, int[] vector) {
+    int[] result = new int[vector.length];
+    for (int i = 0; i < vector.length; i++) {
+      int sum = 0;
+      for (int j = 0; j < vector.length; j++) {
+        sum += matrix[i][j] * vector[j];
+      }
+      result[i] = sum;
+    }
+    return result;
+  }
+
+  /**
+   * This multiplies two matrices, wrapping like an int.
+   *
+   * @param a First matrix
+   * @param b Second matrix
+   * @return The product
+   */
+  static int[][] multiply(int[][] a, int[][] b) {
+    int size = a.length;
+    int[][] result = new int[size][size];
+    for (int i = 0; i < size; i++) {
+      for (int k = 0; k < size; k++) {
+        int value = a[i][k];
+        if (value != 0) {
+          for (int j = 0; j < size; j++) {
+            result[i][j] += value * b[k][j];
+          }
+        }
+      }
+    }
+    return result;
+  }
+}
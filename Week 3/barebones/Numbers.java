@@ -0,0 +1,64 @@
+package barebones;
+
+/**
+ * This lists the numeric modes a program can run in.
+ */
+public enum Numbers {
+  INT, //Values wrap around like an int, as in the original interpreter
+  LONG, //Values are longs, and overflowing one is an error
+  BIG; //Values are longs until they overflow, then that variable becomes a BigInteger
+
+  /**
+   * This finds the mode with a name.
+   *
+   * @param name Name of the mode, as given on the commandline
+   * @return The mode
+   */
+  static Numbers of(String name) {
+    return valueOf(name.toUpperCase());
+  }
+
+  /**
+   * This works out arithmetic on two values which fit in a long.
+   * In the int mode the result wraps, otherwise an overflow throws.
+   *
+   * @param opcode  Arithmetic to do
+   * @param value   Value of the variable
+   * @param operand Value of the operand
+   * @return The result
+   * @throws ArithmeticException The result does not fit, or it divides by zero
+   */
+  long apply(Opcode opcode, long value, long operand) {
+    if (this == INT) {
+      return switch (opcode) {
+        case INCR -> (int) (value + operand);
+        case DECR -> (int) (value - operand);
+        case MULT -> (int) (value * operand);
+        case DIV -> (int) (value / operand);
+        case MOD -> (int) (value % operand);
+        case CLEAR -> 0;
+        default -> operand;
+      };
+    }
+    long result = Arithmetic.apply(opcode, value, operand);
+    if (Arithmetic.overflows(opcode, value, operand, result)) {
+      throw new ArithmeticException("long overflow");
+    }
+    return result;
+  }
+
+  /**
+   * This checks if an arithmetic instruction could stop the program with an error, so it cannot
+   * be deleted even when its result is never used.
+   *
+   * @param opcode Arithmetic done
+   * @return True if it divides, or could overflow in the long mode
+   */
+  boolean fails(Opcode opcode) {
+    return switch (opcode) {
+      case DIV, MOD -> true;
+      case INCR, DECR, MULT -> this == LONG;
+      default -> false;
+    };
+  }
+}
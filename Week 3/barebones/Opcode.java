@@ -0,0 +1,19 @@
+package barebones;
+
+/**
+ * This lists every instruction the interpreter understands.
+ * Each parsed line of a program is turned into one of these, and the optimiser adds the rest.
+ */
+public enum Opcode {
+  CLEAR, INCR, DECR, MULT, DIV, MOD, WHILE, END, IF, ELSE_IF, ELSE, ENDIF,
+  LOOP, //A whole while loop replaced by its closed form
+  SET, //Sets operand a to operand b, replacing a clear followed by other arithmetic
+  DECR_END, //Subtracts the immediate from the loop counter then does an end, replacing a decr before an end
+  CALL, //Calls a subroutine which was not inlined, going to its copy of the body
+  RETURN, //Goes back to the last call, or ends the program if there is none
+  ARRAY, //Creates the elements of an array, if they do not exist yet
+  EACH, //Does arithmetic on every element of an array
+  COUNT, //Sets operand a to the number of elements of an array meeting a condition with operand b
+  STORE, //Does arithmetic on the element of an array chosen by a variable
+  LOAD //Adds or subtracts the element of an array chosen by a variable to or from operand a
+}
@@ -0,0 +1,57 @@
+package barebones;
+
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * This runs the optimisation passes over a program, between linking and resolving its variables.
+ * Each pass takes the linked program and returns an unlinked one, which is linked again before the
+ * next pass.
+ *
+ * <p>Loop summaries are worked out with int arithmetic, so loops are only summarised in the int
+ * numeric mode.
+ */
+final class Optimiser {
+  private Optimiser() {
+  }
+
+  /**
+   * This runs every optimisation pass over a program.
+   *
+   * @param instructions This stores the linked program
+   * @param report       Number of instructions removed by each optimisation, added to by each pass
+   * @param numbers      Numeric mode the program runs in
+   * @return This will return the linked optimised program
+   */
+  static Instruction[] optimise(Instruction[] instructions, Map<String, Integer> report, Numbers numbers) {
+    instructions = pass("Constant folding", instructions, in -> ConstantFolder.fold(in, report, numbers));
+    if (numbers == Numbers.INT) {
+      instructions = pass("Loop summaries", instructions, LoopSummariser::summarise);
+    }
+    instructions = pass("Peephole", instructions, in -> Peephole.optimise(in, report, numbers));
+    return instructions;
+  }
+
+  /**
+   * This runs one pass and links its result, recording it as an event if that is enabled.
+   *
+   * @param name         Name of the pass
+   * @param instructions This stores the linked program
+   * @param pass         Pass to run
+   * @return This will return the linked program after the pass
+   */
+  private static Instruction[] pass(String name, Instruction[] instructions, UnaryOperator<Instruction[]> pass) {
+    Events.Optimise event = Events.recording() ? new Events.Optimise() : null;
+    if (event != null) {
+      event.begin();
+    }
+    Instruction[] result = Linker.link(pass.apply(instructions));
+    if (event != null && event.shouldCommit()) {
+      event.pass = name;
+      event.before = instructions.length;
+      event.after = result.length;
+      event.commit();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,114 @@
+package barebones;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * This stores the commandline options of the interpreter.
+ */
+public final class Options {
+  String engine = "interpreter"; //Engine used to run the code: interpreter, bytecode or tiered
+  int tierThreshold = Tiering.THRESHOLD; //Loop back edges before the tiered engine compiles a loop
+  boolean optimise = true; //True to run the optimisation passes
+  boolean report = false; //True to report what the optimisation passes removed
+  Numbers numbers = Numbers.INT; //Numeric mode: int, long or big
+  Path cache = null; //Directory of compiled programs, or null to always compile
+  int trace = Tracer.CAPACITY; //Steps kept by the tracer when outputting program info
+  Path record = null; //File every step is recorded to for replaying, or null to not record
+  long maxSteps = 0; //Most steps charged at loop back edges before a run is stopped, or 0 for no limit
+  long timeLimit = 0; //Most milliseconds a run can take before it is stopped, or 0 for no limit
+  Path checkpoint = null; //File a run is checkpointed to, or null to not take checkpoints
+  long checkpointEvery = Checkpoint.EVERY; //Milliseconds between checkpoints
+  Path resume = null; //Checkpoint a run carries on from, or null to start from the beginning
+  boolean profile = false; //True to count the steps of each line and time each loop
+  Path folded = null; //File the profile is written to as folded stacks, or null to not write one
+  boolean parallel = false; //True to run independent regions of the program at the same time
+
+  /**
+   * This copies the options, so a compiled program keeps the ones it was compiled with.
+   *
+   * @return The copy
+   */
+  Options copy() {
+    Options copy = new Options();
+    copy.engine = engine;
+    copy.tierThreshold = tierThreshold;
+    copy.optimise = optimise;
+    copy.report = report;
+    copy.numbers = numbers;
+    copy.cache = cache;
+    copy.trace = trace;
+    copy.record = record;
+    copy.maxSteps = maxSteps;
+    copy.timeLimit = timeLimit;
+    copy.checkpoint = checkpoint;
+    copy.checkpointEvery = checkpointEvery;
+    copy.resume = resume;
+    copy.profile = profile;
+    copy.folded = folded;
+    copy.parallel = parallel;
+    return copy;
+  }
+
+  /**
+   * This checks if runs have a step or time limit or take checkpoints, which compiled code then
+   * checks at back edges.
+   *
+   * @return True if back edges are checked
+   */
+  boolean checked() {
+    return maxSteps > 0 || timeLimit > 0 || checkpoint != null;
+  }
+
+  /**
+   * This reads the options from the commandline arguments.
+   *
+   * @param args Commandline arguments
+   * @return The options
+   * @throws IllegalArgumentException An argument is not valid
+   */
+  public static Options parse(String[] args) {
+    Options options = new Options();
+
+    for (String arg : args) {
+      if (arg.matches("^--engine=(interpreter|bytecode|tiered)$")) {
+        options.engine = arg.substring("--engine=".length());
+      } else if (arg.matches("^--tier-threshold=[0-9]{1,9}$")) {
+        options.tierThreshold = Integer.parseInt(arg.substring("--tier-threshold=".length()));
+      } else if (arg.matches("^--numbers=(int|long|big)$")) {
+        options.numbers = Numbers.of(arg.substring("--numbers=".length()));
+      } else if (arg.matches("^--trace=[1-9][0-9]{0,8}$")) {
+        options.trace = Integer.parseInt(arg.substring("--trace=".length()));
+      } else if (arg.matches("^--cache=.+$")) {
+        options.cache = Paths.get(arg.substring("--cache=".length()));
+      } else if (arg.matches("^--record=.+$")) {
+        options.record = Paths.get(arg.substring("--record=".length()));
+      } else if (arg.matches("^--max-steps=[1-9][0-9]{0,17}$")) {
+        options.maxSteps = Long.parseLong(arg.substring("--max-steps=".length()));
+      } else if (arg.matches("^--time-limit=[1-9][0-9]{0,11}$")) {
+        options.timeLimit = Long.parseLong(arg.substring("--time-limit=".length()));
+      } else if (arg.matches("^--checkpoint=.+$")) {
+        options.checkpoint = Paths.get(arg.substring("--checkpoint=".length()));
+      } else if (arg.matches("^--checkpoint-every=[1-9][0-9]{0,11}$")) {
+        options.checkpointEvery = Long.parseLong(arg.substring("--checkpoint-every=".length()));
+      } else if (arg.matches("^--resume=.+$")) {
+        options.resume = Paths.get(arg.substring("--resume=".length()));
+      } else if (arg.equals("--profile")) {
+        options.profile = true;
+      } else if (arg.matches("^--profile=.+$")) {
+        options.profile = true;
+        options.folded = Paths.get(arg.substring("--profile=".length()));
+      } else if (arg.equals("--report")) {
+        options.report = true;
+      } else if (arg.equals("--parallel")) {
+        options.parallel = true;
+      } else if (arg.equals("--no-optimise")) {
+        options.optimise = false;
+      } else {
+        throw new IllegalArgumentException("Invalid Argument: " + arg);
+      }
+    }
+
+    return options;
+  }
+}
@@ -0,0 +1,423 @@
+package barebones;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This is the front end of the interpreter.
+ * It turns the lines of a program into instructions once, before the program is run,
+ * so the instruction processing loop never has to use a regex.
+ *
+ * <p>Subroutines are defined with {@code def name A B;} and {@code enddef;}, outside any other block,
+ * and are run with {@code call name X Y;}. Each body is kept apart from the main program, and once
+ * every line has been parsed the calls are expanded by {@link Subroutines}.
+ *
+ * <p>Arrays are declared with {@code array A 10;}, outside any block. Every declaration is found
+ * before the rest of the program is parsed, so an array can be used anywhere in the program. Each
+ * line using an array is checked against its declaration, and becomes an ordinary instruction on
+ * an element chosen by a literal or an {@link ArrayOperation} otherwise.
+ */
+public final class Parser {
+  private static final String NAME = "[A-Za-z]+(?:\\[(?:[0-9]+|[A-Za-z]+)\\])?"; //Variable, array or element
+  private static final Pattern CLEAR = Pattern.compile("^clear (" + NAME + ");$");
+  private static final Pattern BASIC = Pattern.compile("^(incr|decr|mult|div|mod) (" + NAME + ") (" + NAME + "|[0-9]+);$");
+  private static final Pattern WHILE = Pattern.compile("^while (" + NAME + ") not (" + NAME + "|[0-9]+) do;$");
+  private static final Pattern END = Pattern.compile("^end;$");
+  private static final Pattern IF = Pattern.compile("^(else )?if (" + NAME + "|[0-9]+) (==|!=|>|<|>=|<=) (" + NAME + "|[0-9]+);$");
+  private static final Pattern ELSE = Pattern.compile("^else;$");
+  private static final Pattern ENDIF = Pattern.compile("^endif;$");
+  private static final Pattern DEF = Pattern.compile("^def ([A-Za-z]+)((?: [A-Za-z]+)*);$");
+  private static final Pattern ENDDEF = Pattern.compile("^enddef;$");
+  private static final Pattern CALL = Pattern.compile("^call ([A-Za-z]+)((?: " + NAME + ")*);$");
+  private static final Pattern ARRAY = Pattern.compile("^array ([A-Za-z]+) ([0-9]+);$");
+  private static final Pattern COUNT = Pattern.compile("^count (" + NAME + ") ([A-Za-z]+) (==|!=|>|<|>=|<=) (" + NAME + "|[0-9]+);$");
+  private static final Pattern COMMENT = Pattern.compile("^//([A-z0-9.]| )*$");
+  private static final Pattern VARIABLE = Pattern.compile("[A-Za-z].*");
+
+  private Parser() {
+  }
+
+  /**
+   * This will parse every line of a program into an instruction.
+   * Comments are dropped, so the returned array only contains instructions which do something.
+   *
+   * @param program This stores the program as lines of text
+   * @param numbers Numeric mode, which limits how large a literal can be
+   * @return This will return the program as an array of instructions, with its calls expanded
+   * @throws IllegalArgumentException A line is not valid code, or a subroutine is not valid
+   */
+  public static Instruction[] parse(List<String> program, Numbers numbers) {
+    Map<String, Integer> arrays = arrays(program);
+    List<Instruction> instructions = new ArrayList<>(program.size());
+    Subroutines subroutines = new Subroutines();
+    List<Instruction> body = null; //Instructions of the subroutine being defined, or null
+    String definition = null; //Line defining the subroutine being defined
+    int defined = 0; //Line number of that line
+    int depth = 0; //Blocks open in the main program or the subroutine being defined
+
+    for (int i = 0; i < program.size(); i++) {
+      //Gets current line and removes whitespace
+      String line = program.get(i).trim();
+      Matcher m;
+
+      if ((m = DEF.matcher(line)).matches()) {
+        if (body != null || depth > 0) {
+          throw Subroutines.error(line, i + 1, "is inside a block");
+        }
+        for (String parameter : names(m.group(2))) {
+          if (arrays.containsKey(parameter)) {
+            throw Subroutines.error(line, i + 1, "has a parameter with the same name as the array " + parameter);
+          }
+        }
+        body = subroutines.define(line, m.group(1), names(m.group(2)), i + 1);
+        definition = line;
+        defined = i + 1;
+        depth = 0;
+
+      } else if (ENDDEF.matcher(line).matches()) {
+        if (body == null) {
+          throw Subroutines.error(line, i + 1, "has no matching def");
+        }
+        if (depth != 0) {
+          throw Subroutines.error(line, i + 1, "closes a subroutine with a block still open");
+        }
+        subroutines.end(i + 1);
+        body = null;
+
+      } else {
+        Instruction instruction = instruction(line, i + 1, arrays);
+        if (instruction == null) {
+          continue;
+        }
+        if (numbers == Numbers.INT && Math.max(instruction.aValue, instruction.bValue) > Integer.MAX_VALUE) {
+          throw tooLarge(line, i + 1, "an int");
+        }
+        if (instruction.opcode == Opcode.ARRAY && (body != null || depth > 0)) {
+          throw ArrayOperation.error(line, i + 1, "is inside a block");
+        }
+        depth += blocks(instruction.opcode);
+        if (depth < 0 && body != null) {
+          //A subroutine's blocks must close inside it, since it can be called from anywhere
+          throw Subroutines.error(line, i + 1, "has no matching block in its subroutine");
+        }
+        (body != null ? body : instructions).add(instruction);
+      }
+    }
+
+    if (body != null) {
+      throw Subroutines.error(definition, defined, "is never closed");
+    }
+    return subroutines.expand(instructions, program.size());
+  }
+
+  /**
+   * This finds every array declared in a program.
+   *
+   * @param program This stores the program as lines of text
+   * @return Number of elements in each array, by name
+   * @throws IllegalArgumentException An array is declared twice, or has no elements or too many
+   */
+  private static Map<String, Integer> arrays(List<String> program) {
+    Map<String, Integer> arrays = new HashMap<>();
+    Map<String, Integer> declared = new HashMap<>(); //Line number of each declaration
+    for (int i = 0; i < program.size(); i++) {
+      String line = program.get(i).trim();
+      Matcher m = ARRAY.matcher(line);
+      if (m.matches()) {
+        String name = m.group(1);
+        if (declared.containsKey(name)) {
+          throw ArrayOperation.error(line, i + 1, "has the same name as the array on line " + declared.get(name));
+        }
+        String digits = m.group(2);
+        if (digits.length() > 7 || Integer.parseInt(digits) > ArrayOperation.LONGEST) {
+          throw ArrayOperation.error(line, i + 1, "has more than " + ArrayOperation.LONGEST + " elements");
+        }
+        if (Integer.parseInt(digits) == 0) {
+          throw ArrayOperation.error(line, i + 1, "has no elements");
+        }
+        arrays.put(name, Integer.parseInt(digits));
+        declared.put(name, i + 1);
+      }
+    }
+    return arrays;
+  }
+
+  /**
+   * This checks a single line is valid code, without checking the blocks or calls around it.
+   *
+   * @param line Line of code
+   * @return 1 if the line opens a block, -1 if it closes one, otherwise 0
+   * @throws IllegalArgumentException The line is not valid code
+   */
+  static int blocks(String line) {
+    line = line.trim();
+    if (DEF.matcher(line).matches()) {
+      return 1;
+    }
+    if (ENDDEF.matcher(line).matches()) {
+      return -1;
+    }
+    Instruction instruction = instruction(line, 1, null);
+    return instruction == null ? 0 : blocks(instruction.opcode);
+  }
+
+  /**
+   * This works out if an instruction opens or closes a block.
+   *
+   * @param opcode Type of instruction
+   * @return 1 if it opens a block, -1 if it closes one, otherwise 0
+   */
+  private static int blocks(Opcode opcode) {
+    return switch (opcode) {
+      case WHILE, IF -> 1;
+      case END, ENDIF -> -1;
+      default -> 0;
+    };
+  }
+
+  /**
+   * This will parse a line other than a def or enddef into an instruction.
+   *
+   * @param line   Line of code, with whitespace removed
+   * @param number Line number in the source file
+   * @param arrays Number of elements in each array, by name, or null to not check arrays
+   * @return The instruction, or null if the line is a comment
+   * @throws IllegalArgumentException The line is not valid code
+   */
+  private static Instruction instruction(String line, int number, Map<String, Integer> arrays) {
+    Matcher m;
+
+    if ((m = CLEAR.matcher(line)).matches()) {
+      return arithmetic(Opcode.CLEAR, m.group(1), null, line, number, arrays);
+
+    } else if ((m = BASIC.matcher(line)).matches()) {
+      Opcode opcode = Opcode.valueOf(m.group(1).toUpperCase());
+      return arithmetic(opcode, m.group(2), m.group(3), line, number, arrays);
+
+    } else if ((m = WHILE.matcher(line)).matches()) {
+      return operands(Opcode.WHILE, variable(m.group(1), line, number, arrays),
+          variable(m.group(2), line, number, arrays), null, null, line, number);
+
+    } else if (END.matcher(line).matches()) {
+      return new Instruction(Opcode.END, null, 0, null, 0, null, number);
+
+    } else if ((m = IF.matcher(line)).matches()) {
+      Opcode opcode = m.group(1) == null ? Opcode.IF : Opcode.ELSE_IF;
+      return operands(opcode, variable(m.group(2), line, number, arrays), variable(m.group(4), line, number, arrays),
+          Comparison.of(m.group(3)), null, line, number);
+
+    } else if (ELSE.matcher(line).matches()) {
+      return new Instruction(Opcode.ELSE, null, 0, null, 0, null, number);
+
+    } else if (ENDIF.matcher(line).matches()) {
+      return new Instruction(Opcode.ENDIF, null, 0, null, 0, null, number);
+
+    } else if ((m = CALL.matcher(line)).matches()) {
+      List<String> arguments = new ArrayList<>(List.of(m.group(1)));
+      for (String argument : names(m.group(2))) {
+        arguments.add(variable(argument, line, number, arrays));
+      }
+      return new Instruction(arguments.toArray(new String[0]), 0, number);
+
+    } else if ((m = ARRAY.matcher(line)).matches()) {
+      int length = arrays != null ? arrays.get(m.group(1)) : 0;
+      return new Instruction(Opcode.ARRAY, null, 0, null, 0, null,
+          new ArrayOperation(m.group(1), length, null, null, null), number);
+
+    } else if ((m = COUNT.matcher(line)).matches()) {
+      ArrayOperation array = new ArrayOperation(m.group(2), length(m.group(2), line, number, arrays), null, null, null);
+      return operands(Opcode.COUNT, variable(m.group(1), line, number, arrays), variable(m.group(4), line, number, arrays),
+          Comparison.of(m.group(3)), array, line, number);
+
+    } else if (!COMMENT.matcher(line).matches()) {
+      //Displays error for unknown code, except comments
+      throw new IllegalArgumentException("Invalid Line: " + line);
+    }
+    return null;
+  }
+
+  /**
+   * This will parse a clear, incr, decr, mult, div or mod, which can be on a variable, a whole
+   * array or an element chosen by a variable.
+   *
+   * @param opcode Type of arithmetic
+   * @param first  Text of the first operand
+   * @param second Text of the second operand, or null for a clear
+   * @param line   Line of code
+   * @param number Line number in the source file
+   * @param arrays Number of elements in each array, by name, or null to not check arrays
+   * @return The instruction
+   * @throws IllegalArgumentException An array or element is used in a way which is not supported
+   */
+  private static Instruction arithmetic(Opcode opcode, String first, String second, String line, int number,
+                                        Map<String, Integer> arrays) {
+    String operand = second != null ? second : "0";
+
+    if (indexed(first) || indexed(operand)) {
+      if (opcode != Opcode.CLEAR && opcode != Opcode.INCR && opcode != Opcode.DECR) {
+        throw ArrayOperation.error(line, number, "can only clear, add to or subtract from an element chosen by a variable");
+      }
+      boolean store = indexed(first);
+      String element = store ? first : operand;
+      int bracket = element.indexOf('[');
+      String name = element.substring(0, bracket);
+      String index = variable(element.substring(bracket + 1, element.length() - 1), line, number, arrays);
+      ArrayOperation array = new ArrayOperation(name, length(name, line, number, arrays), opcode, index, null);
+      return store
+          ? operands(Opcode.STORE, "0", variable(operand, line, number, arrays), null, array, line, number)
+          : operands(Opcode.LOAD, variable(first, line, number, arrays), "0", null, array, line, number);
+    }
+
+    if (arrays != null && arrays.containsKey(first)) {
+      if (opcode == Opcode.DIV || opcode == Opcode.MOD) {
+        throw ArrayOperation.error(line, number, "can only clear, add to, subtract from or multiply a whole array");
+      }
+      if (!arrays.containsKey(operand)) {
+        return operands(Opcode.EACH, "0", variable(operand, line, number, arrays), null,
+            new ArrayOperation(first, arrays.get(first), opcode, null, null), line, number);
+      }
+      if (opcode == Opcode.MULT) {
+        throw ArrayOperation.error(line, number, "can only add or subtract a whole array");
+      }
+      if (!arrays.get(first).equals(arrays.get(operand))) {
+        throw ArrayOperation.error(line, number, "uses arrays with different numbers of elements");
+      }
+      return operands(Opcode.EACH, "0", "0", null, new ArrayOperation(first, arrays.get(first), opcode, null, operand), line, number);
+    }
+
+    return operands(opcode, variable(first, line, number, arrays), variable(operand, line, number, arrays), null,
+        null, line, number);
+  }
+
+  /**
+   * This checks if an operand is the element of an array chosen by a variable, such as {@code A[I]}.
+   *
+   * @param text Text of the operand
+   * @return True if it is
+   */
+  private static boolean indexed(String text) {
+    int bracket = text.indexOf('[');
+    return bracket != -1 && Character.isLetter(text.charAt(bracket + 1));
+  }
+
+  /**
+   * This checks an operand is a variable, an element chosen by a literal or a literal, and not a
+   * whole array or an element chosen by a variable.
+   *
+   * @param text   Text of the operand
+   * @param line   Line of code
+   * @param number Line number in the source file
+   * @param arrays Number of elements in each array, by name, or null to not check arrays
+   * @return The operand, with the index of an element written without leading zeros
+   * @throws IllegalArgumentException The operand is an array, or an element which does not exist
+   */
+  private static String variable(String text, String line, int number, Map<String, Integer> arrays) {
+    if (arrays == null) {
+      return text;
+    }
+    int bracket = text.indexOf('[');
+    if (bracket == -1) {
+      if (arrays.containsKey(text)) {
+        throw ArrayOperation.error(line, number, "uses the array " + text + " as a variable");
+      }
+      return text;
+    }
+    if (indexed(text)) {
+      throw ArrayOperation.error(line, number, "can only choose an element with a variable in clear, incr and decr");
+    }
+    String name = text.substring(0, bracket);
+    int length = length(name, line, number, arrays);
+    String digits = text.substring(bracket + 1, text.length() - 1).replaceFirst("^0+(?=.)", "");
+    if (digits.length() > 7 || Integer.parseInt(digits) >= length) {
+      throw ArrayOperation.error(line, number, "uses an element past the end of " + name + ", which has " + length + " elements");
+    }
+    return ArrayOperation.element(name, Integer.parseInt(digits));
+  }
+
+  /**
+   * This gets the number of elements in an array used by a line.
+   *
+   * @param name   Name of the array
+   * @param line   Line of code
+   * @param number Line number in the source file
+   * @param arrays Number of elements in each array, by name, or null to not check arrays
+   * @return Number of elements, or 0 if arrays are not checked
+   * @throws IllegalArgumentException The array is not declared
+   */
+  private static int length(String name, String line, int number, Map<String, Integer> arrays) {
+    if (arrays == null) {
+      return 0;
+    }
+    Integer length = arrays.get(name);
+    if (length == null) {
+      throw ArrayOperation.error(line, number, "uses " + name + ", which is not declared as an array");
+    }
+    return length;
+  }
+
+  /**
+   * This splits the names after a def or call.
+   *
+   * @param text Names, each following a space
+   * @return The names
+   */
+  private static String[] names(String text) {
+    return text.isEmpty() ? new String[0] : text.substring(1).split(" ");
+  }
+
+  /**
+   * This creates an instruction with two operands, working out if each one is a variable or a literal.
+   *
+   * @param opcode   Type of instruction
+   * @param first    Text of the first operand
+   * @param second   Text of the second operand
+   * @param operator Comparison used by if, else if and count
+   * @param array    Array used by an array instruction, or null
+   * @param line     Line of code
+   * @param number   Line number in the source file
+   * @return The new instruction
+   * @throws IllegalArgumentException A literal is too large for a long
+   */
+  private static Instruction operands(Opcode opcode, String first, String second, Comparison operator,
+                                       ArrayOperation array, String line, int number) {
+    boolean aVariable = VARIABLE.matcher(first).matches();
+    boolean bVariable = VARIABLE.matcher(second).matches();
+
+    return new Instruction(opcode,
+        aVariable ? first : null, aVariable ? 0 : literal(first, line, number),
+        bVariable ? second : null, bVariable ? 0 : literal(second, line, number),
+        operator, array, number);
+  }
+
+  /**
+   * This reads a literal, which can be as large as a long. Whether it fits the numeric mode is
+   * checked once the whole instruction has been parsed.
+   *
+   * @param text   Text of the literal
+   * @param line   Line of code
+   * @param number Line number in the source file
+   * @return The value of the literal
+   * @throws IllegalArgumentException The literal is too large for a long
+   */
+  private static long literal(String text, String line, int number) {
+    try {
+      return Long.parseLong(text);
+    } catch (NumberFormatException e) {
+      throw tooLarge(line, number, "a long");
+    }
+  }
+
+  /**
+   * This creates the error for a literal too large for the numeric mode.
+   *
+   * @param line   Line of code
+   * @param number Line number in the source file
+   * @param type   Type the literal does not fit, such as "an int"
+   * @return The error, for the caller to throw
+   */
+  private static IllegalArgumentException tooLarge(String line, int number, String type) {
+    return new IllegalArgumentException("Invalid Line: '" + line + "' on line " + number
+        + " has a literal too large for " + type);
+  }
+}
@@ -0,0 +1,201 @@
+package barebones;
+
+import java.util.*;
+
+/**
+ * This is the peephole optimisation pass, which joins neighbouring instructions so fewer have to
+ * be dispatched.
+ *
+ * <p>Arithmetic on the same variable with literal operands is folded into one instruction, so
+ * {@code incr X 1; incr X 1;} becomes {@code incr X 2;}. A clear followed by arithmetic becomes a
+ * set, so {@code clear T; incr T 5; mult T 2;} becomes {@code set T 10;}, and a change to a loop's
+ * counter just before its end becomes a decr end.
+ *
+ * <p>Every jump lands just after a while, end, if, else if, else, endif, call or return, so two
+ * arithmetic instructions next to each other always run together and can be joined safely.
+ *
+ * <p>Outside the int numeric mode, arithmetic is only joined when the joined literal fits in a
+ * long. In the long mode, instructions are also only joined when the joined one overflows exactly
+ * when the originals would, so additions and subtractions are not mixed and multiplications by
+ * zero are kept.
+ */
+final class Peephole {
+  static final String FOLDED = "Arithmetic folded";
+  static final String SET = "Clears joined into set";
+  static final String DECR_END = "Counter changes joined into decr end";
+
+  private final Numbers numbers;
+
+  private Peephole(Numbers numbers) {
+    this.numbers = numbers;
+  }
+
+  /**
+   * This will join every group of instructions which can be joined.
+   *
+   * @param instructions This stores the linked program
+   * @param report       Number of instructions removed by each rule, added to by this pass
+   * @param numbers      Numeric mode the program runs in
+   * @return This will return the unlinked optimised program
+   */
+  static Instruction[] optimise(Instruction[] instructions, Map<String, Integer> report, Numbers numbers) {
+    Peephole peephole = new Peephole(numbers);
+    List<Instruction> optimised = new ArrayList<>(instructions.length);
+
+    for (Instruction instruction : instructions) {
+      while (!optimised.isEmpty()) {
+        Instruction previous = optimised.get(optimised.size() - 1);
+        Instruction joined = peephole.join(previous, instruction);
+        if (joined == null) {
+          break;
+        }
+        optimised.remove(optimised.size() - 1);
+        report.merge(rule(previous, joined), 1, Integer::sum);
+        instruction = joined;
+      }
+      optimised.add(instruction);
+    }
+
+    return optimised.toArray(new Instruction[0]);
+  }
+
+  /**
+   * This works out which rule joined two instructions, for the report.
+   *
+   * @param previous First instruction joined
+   * @param joined   Instruction they were joined into
+   * @return Name of the rule
+   */
+  private static String rule(Instruction previous, Instruction joined) {
+    if (joined.opcode == Opcode.DECR_END) {
+      return DECR_END;
+    }
+    return previous.opcode == Opcode.CLEAR ? SET : FOLDED;
+  }
+
+  /**
+   * This tries to join two instructions which run one after the other.
+   *
+   * @param first  First instruction
+   * @param second Second instruction
+   * @return The joined instruction, or null if they cannot be joined
+   */
+  private Instruction join(Instruction first, Instruction second) {
+    int fused = first.fused + second.fused + 1;
+
+    //A change to the loop counter just before the end
+    if (second.opcode == Opcode.END && first.b == null && second.a.equals(first.a)
+        && (first.opcode == Opcode.INCR || first.opcode == Opcode.DECR)) {
+      long amount = first.opcode == Opcode.DECR ? first.bValue : -first.bValue;
+      if (numbers == Numbers.INT) {
+        amount = (int) amount;
+      }
+      return new Instruction(Opcode.DECR_END, second.a, 0, second.b, second.bValue, amount, second.line,
+          fused);
+    }
+
+    //Everything else only joins arithmetic on the same variable, with a literal second operand
+    if (!arithmetic(first) || !arithmetic(second) || !first.a.equals(second.a) || second.b != null) {
+      return null;
+    }
+    long literal = second.bValue;
+
+    //A clear, or setting to a literal, makes the value known
+    if (first.opcode == Opcode.CLEAR || (first.opcode == Opcode.SET && first.b == null)) {
+      long value = first.opcode == Opcode.CLEAR ? 0 : first.bValue;
+      if (second.opcode == Opcode.CLEAR) {
+        return set(first.a, 0, second.line, fused);
+      }
+      if ((second.opcode == Opcode.DIV || second.opcode == Opcode.MOD) && literal == 0) {
+        return null; //Keeps the division by zero error
+      }
+      try {
+        return set(first.a, numbers.apply(second.opcode, value, literal), first.line, fused);
+      } catch (ArithmeticException e) {
+        return null; //Keeps the overflow for when the program runs
+      }
+    }
+
+    //A clear after arithmetic with a literal operand replaces it, unless it divides by zero or overflows
+    if (second.opcode == Opcode.CLEAR && first.b == null && numbers != Numbers.LONG
+        && !((first.opcode == Opcode.DIV || first.opcode == Opcode.MOD) && first.bValue == 0)) {
+      return new Instruction(Opcode.CLEAR, second.a, 0, null, 0, 0, second.line, fused);
+    }
+    if (first.b != null) {
+      return null;
+    }
+
+    //Additions and subtractions add together, and multiplications multiply together
+    boolean firstAdds = first.opcode == Opcode.INCR || first.opcode == Opcode.DECR;
+    boolean secondAdds = second.opcode == Opcode.INCR || second.opcode == Opcode.DECR;
+    if (firstAdds && secondAdds) {
+      if (numbers == Numbers.LONG && Long.signum(signed(first)) * Long.signum(signed(second)) < 0) {
+        return null;
+      }
+      return literal(Opcode.INCR, first, signed(first), signed(second), fused);
+    }
+    if (first.opcode == Opcode.MULT && second.opcode == Opcode.MULT) {
+      if (numbers == Numbers.LONG && (first.bValue == 0 || literal == 0)) {
+        return null;
+      }
+      return literal(Opcode.MULT, first, first.bValue, literal, fused);
+    }
+    return null;
+  }
+
+  /**
+   * This creates an incr or mult with the literals of two instructions joined.
+   *
+   * @param opcode Incr to add the literals, or mult to multiply them
+   * @param first  First instruction joined
+   * @param a      First literal
+   * @param b      Second literal
+   * @param fused  Number of extra instructions it replaced
+   * @return The joined instruction, or null if the joined literal does not fit
+   */
+  private Instruction literal(Opcode opcode, Instruction first, long a, long b, int fused) {
+    long joined = opcode == Opcode.INCR ? a + b : a * b;
+    if (numbers == Numbers.INT) {
+      joined = (int) joined;
+    } else if (Arithmetic.overflows(opcode, a, b, joined)) {
+      return null;
+    }
+    return new Instruction(opcode, first.a, 0, null, joined, 0, first.line, fused);
+  }
+
+  /**
+   * This creates a set instruction with a literal value.
+   *
+   * @param name  Variable being set
+   * @param value Value it is set to
+   * @param line  Line number in the source file
+   * @param fused Number of extra instructions it replaced
+   * @return The set instruction
+   */
+  private static Instruction set(String name, long value, int line, int fused) {
+    return new Instruction(Opcode.SET, name, 0, null, value, 0, line, fused);
+  }
+
+  /**
+   * This checks if an instruction is arithmetic on a single variable.
+   *
+   * @param instruction Instruction to check
+   * @return True if it is arithmetic
+   */
+  private static boolean arithmetic(Instruction instruction) {
+    return switch (instruction.opcode) {
+      case CLEAR, INCR, DECR, MULT, DIV, MOD, SET -> true;
+      default -> false;
+    };
+  }
+
+  /**
+   * This gets the amount an incr or decr with a literal operand adds.
+   *
+   * @param instruction Incr or decr instruction
+   * @return The amount added, which is negative for a decr
+   */
+  private static long signed(Instruction instruction) {
+    return instruction.opcode == Opcode.DECR ? -instruction.bValue : instruction.bValue;
+  }
+}
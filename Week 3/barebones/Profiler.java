@@ -0,0 +1,220 @@
+package barebones;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * This profiles a run, counting the steps run on each line and timing each while loop, to find
+ * which parts of a program are worth optimising.
+ *
+ * <p>Every step only adds to a counter, and the clock is only read when a loop starts and finishes,
+ * so the profiler's cost is bounded by the number of loops run rather than the number of steps.
+ * The cost of reading the clock is measured when the profiler is made, and reported with how often
+ * it was read. Loop times include any loops inside them.
+ *
+ * <p>Loops replaced by their closed form run in one step, so they are counted but not timed. Lines
+ * joined by the optimiser are counted on the first of them, and profiling with --no-optimise counts
+ * each line as written.
+ */
+public final class Profiler implements Executor.Listener {
+  private static final int SHOWN = 20; //Lines and loops shown in the report
+
+  private final Program program;
+  private final long[] counts; //Steps run by the instruction at each address
+  private final long[] entries; //Times the loop starting at each address was reached
+  private final long[] iterations; //Times the body of the loop starting at each address ran
+  private final long[] nanos; //Time spent in the loop starting at each address
+  private final int[] loop; //Address of the innermost loop each address is in, or -1
+  private final int[] outer; //Address of the loop each loop is inside, or -1
+  private int[] active; //Address of each loop running, innermost last
+  private long[] started; //Time each loop running started
+  private int depth; //Number of loops running
+  private final double readCost; //Nanoseconds taken to read the clock
+  private long reads; //Times the clock was read
+  private long start; //Time the run started
+  private long finish; //Time the run finished
+
+  /**
+   * This creates a profiler for a program.
+   *
+   * @param program Program being profiled
+   */
+  public Profiler(Program program) {
+    this.program = program;
+    int size = program.instructions.length;
+    counts = new long[size];
+    entries = new long[size];
+    iterations = new long[size];
+    nanos = new long[size];
+    loop = new int[size];
+    outer = new int[size];
+    active = new int[size + 1];
+    started = new long[size + 1];
+
+    //Each while and end belongs to its own loop, and everything between them to the loop too
+    int[] open = new int[size + 1];
+    int opened = 0;
+    for (int i = 0; i < size; i++) {
+      Opcode opcode = program.instructions[i].opcode;
+      if (opcode == Opcode.WHILE) {
+        outer[i] = opened == 0 ? -1 : open[opened - 1];
+        open[opened++] = i;
+      }
+      loop[i] = opened == 0 ? -1 : open[opened - 1];
+      if ((opcode == Opcode.END || opcode == Opcode.DECR_END) && opened > 0) {
+        opened--;
+      }
+    }
+
+    //Measures the clock, so the time the profiler adds can be reported
+    long before = System.nanoTime();
+    for (int i = 0; i < 1000; i++) {
+      System.nanoTime();
+    }
+    readCost = (System.nanoTime() - before) / 1001.0;
+  }
+
+  @Override
+  public void start(State state) {
+    start = System.nanoTime();
+    finish = start;
+    reads++;
+  }
+
+  @Override
+  public void step(int address, int programCounter, Instruction instruction, State state) {
+    counts[address]++;
+
+    switch (instruction.opcode) {
+      case WHILE -> {
+        entries[address]++;
+        if (programCounter == address + 1) {
+          //Condition met: the body runs, inside any loops running, which recursion can nest without limit
+          iterations[address]++;
+          if (depth == active.length) {
+            active = Arrays.copyOf(active, depth * 2);
+            started = Arrays.copyOf(started, depth * 2);
+          }
+          active[depth] = address;
+          started[depth++] = System.nanoTime();
+          reads++;
+        }
+      }
+      case END, DECR_END -> {
+        if (programCounter == instruction.jump) {
+          iterations[instruction.jump - 1]++;
+        } else if (depth > 0) {
+          //Loop finished
+          depth--;
+          nanos[active[depth]] += System.nanoTime() - started[depth];
+          reads++;
+        }
+      }
+      default -> {
+      }
+    }
+
+    if (programCounter >= counts.length) {
+      finish = System.nanoTime();
+      reads++;
+    }
+  }
+
+  /**
+   * This outputs the lines run the most and the loops which took longest.
+   *
+   * @param out Used to write the report
+   */
+  public void report(PrintStream out) {
+    long steps = 0;
+    Map<Integer, Long> lines = new HashMap<>();
+    for (int i = 0; i < counts.length; i++) {
+      steps += counts[i];
+      if (counts[i] > 0) {
+        lines.merge(program.instructions[i].line, counts[i], Long::sum);
+      }
+    }
+
+    out.println(" - - - - Profile - - - - ");
+    out.println("Steps: " + steps);
+    out.println("Time: " + millis(finish - start) + " ms");
+    out.println("Profiler clock reads: " + reads + ", about " + millis((long) (reads * readCost)) + " ms");
+
+    out.println(" - - - - Hot Lines - - - - ");
+    List<Map.Entry<Integer, Long>> hot = new ArrayList<>(lines.entrySet());
+    hot.sort(Map.Entry.<Integer, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+    for (Map.Entry<Integer, Long> line : hot.subList(0, Math.min(SHOWN, hot.size()))) {
+      out.println("Line " + line.getKey() + ": " + line.getValue() + " steps ("
+          + String.format(Locale.ROOT, "%.1f", 100.0 * line.getValue() / Math.max(steps, 1)) + "%)");
+    }
+    if (hot.size() > SHOWN) {
+      out.println("(" + (hot.size() - SHOWN) + " more lines)");
+    }
+
+    out.println(" - - - - Hot Loops - - - - ");
+    List<Integer> loops = new ArrayList<>();
+    for (int i = 0; i < counts.length; i++) {
+      Opcode opcode = program.instructions[i].opcode;
+      if ((opcode == Opcode.WHILE || opcode == Opcode.LOOP) && counts[i] > 0) {
+        loops.add(i);
+      }
+    }
+    loops.sort(Comparator.<Integer>comparingLong(i -> nanos[i]).reversed()
+        .thenComparing(Comparator.<Integer>comparingLong(i -> iterations[i]).reversed())
+        .thenComparing(Comparator.<Integer>comparingLong(i -> counts[i]).reversed()));
+    for (int address : loops.subList(0, Math.min(SHOWN, loops.size()))) {
+      Instruction instruction = program.instructions[address];
+      if (instruction.opcode == Opcode.LOOP) {
+        out.println("Line " + instruction.line + ": summarised, run " + counts[address] + " times");
+      } else {
+        out.println("Line " + instruction.line + ": " + millis(nanos[address]) + " ms, reached "
+            + entries[address] + " times, " + iterations[address] + " iterations");
+      }
+    }
+    if (loops.size() > SHOWN) {
+      out.println("(" + (loops.size() - SHOWN) + " more loops)");
+    }
+  }
+
+  /**
+   * This writes the steps run on each line as folded stacks, one line for each stack of loops
+   * and the line inside them, followed by its steps. This is the format read by flame graph tools.
+   *
+   * @param file File to write
+   * @throws IOException Writing the file gone wrong
+   */
+  public void folded(Path file) throws IOException {
+    Map<String, Long> stacks = new LinkedHashMap<>();
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        StringBuilder stack = new StringBuilder();
+        for (int start = loop[i]; start != -1; start = outer[start]) {
+          stack.insert(0, ";while line " + program.instructions[start].line);
+        }
+        stack.insert(0, "program").append(";line ").append(program.instructions[i].line);
+        stacks.merge(stack.toString(), counts[i], Long::sum);
+      }
+    }
+
+    try (BufferedWriter out = Files.newBufferedWriter(file)) {
+      for (Map.Entry<String, Long> stack : stacks.entrySet()) {
+        out.write(stack.getKey() + " " + stack.getValue());
+        out.newLine();
+      }
+    }
+  }
+
+  /**
+   * This writes a time in milliseconds.
+   *
+   * @param nanos Time in nanoseconds
+   * @return The time with three decimal places
+   */
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+}
@@ -0,0 +1,379 @@
+package barebones;
+
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * This stores a compiled program: its linked instructions and the name of each variable.
+ * Every variable is given a slot, which is its index in the register file used while running.
+ *
+ * <p>A program never changes once it is compiled, so one program can be run by many threads at
+ * once. Each run has its own {@link State}, and the engine chosen when it was compiled is made the
+ * first time it runs and then kept, so the bytecode engine only compiles it once.
+ */
+public final class Program {
+  final Instruction[] instructions; //Linked instructions, with variables resolved to slots
+  final String[] names; //Name of the variable in each slot
+  final Map<String, Integer> report; //Number of instructions removed by each optimisation
+  final Numbers numbers; //Numeric mode the program runs in
+  final int[] arrays; //First slot of the array each slot is an element of, or -1 for other variables
+  private final Map<String, Integer> slots; //Slot of each variable, by name
+  private final Options options; //Options the program was compiled with, which choose its engine
+  private volatile Executor executor; //Runs the program, made on the first run
+
+  Program(Instruction[] instructions, String[] names, Map<String, Integer> report, Options options) {
+    this.instructions = instructions;
+    this.names = names;
+    this.report = Collections.unmodifiableMap(report);
+    this.options = options;
+    numbers = options.numbers;
+
+    Map<String, Integer> slots = new HashMap<>();
+    arrays = new int[names.length];
+    for (int i = 0; i < names.length; i++) {
+      slots.put(names[i], i);
+      //The elements of an array have slots next to each other, starting with element 0
+      int bracket = names[i].indexOf('[');
+      arrays[i] = bracket == -1 ? -1 : i - Integer.parseInt(names[i].substring(bracket + 1, names[i].length() - 1));
+    }
+    this.slots = slots;
+  }
+
+  /**
+   * This will parse, link, optimise and resolve the variables of a program.
+   *
+   * @param program This stores the program as lines of text
+   * @return This will return the compiled program
+   * @throws IllegalArgumentException The program is not valid
+   */
+  public static Program compile(List<String> program) {
+    return compile(program, true);
+  }
+
+  /**
+   * This will parse, link and resolve the variables of a program.
+   *
+   * @param program  This stores the program as lines of text
+   * @param optimise True to run the optimisation passes
+   * @return This will return the compiled program
+   * @throws IllegalArgumentException The program is not valid
+   */
+  public static Program compile(List<String> program, boolean optimise) {
+    return compile(program, optimise, Numbers.INT);
+  }
+
+  /**
+   * This will parse, link and resolve the variables of a program for a numeric mode.
+   *
+   * @param program  This stores the program as lines of text
+   * @param optimise True to run the optimisation passes
+   * @param numbers  Numeric mode the program runs in
+   * @return This will return the compiled program
+   * @throws IllegalArgumentException The program is not valid
+   */
+  public static Program compile(List<String> program, boolean optimise, Numbers numbers) {
+    Options options = new Options();
+    options.optimise = optimise;
+    options.numbers = numbers;
+    return compile(program, options);
+  }
+
+  /**
+   * This will parse, link and resolve the variables of a program, using the options given.
+   *
+   * @param program This stores the program as lines of text
+   * @param options Options choosing the optimisations, numeric mode and engine
+   * @return This will return the compiled program
+   * @throws IllegalArgumentException The program is not valid
+   */
+  public static Program compile(List<String> program, Options options) {
+    options = options.copy();
+    Events.Compile event = Events.recording() ? new Events.Compile() : null;
+    if (event != null) {
+      event.begin();
+    }
+    Program compiled = options.cache != null ? ProgramCache.compile(program, options) : build(program, options);
+    if (event != null && event.shouldCommit()) {
+      event.lines = program.size();
+      event.instructions = compiled.instructions.length;
+      event.variables = compiled.names.length;
+      event.numbers = options.numbers.name();
+      event.optimised = options.optimise;
+      event.cache = options.cache != null;
+      event.commit();
+    }
+    return compiled;
+  }
+
+  /**
+   * This runs the front end: parsing, linking, optimising and resolving the variables.
+   *
+   * @param program This stores the program as lines of text
+   * @param options Options the program is compiled with
+   * @return This will return the compiled program
+   * @throws IllegalArgumentException The program is not valid
+   */
+  static Program build(List<String> program, Options options) {
+    Instruction[] instructions = Linker.link(Parser.parse(program, options.numbers));
+    Map<String, Integer> report = new LinkedHashMap<>();
+    if (options.optimise) {
+      instructions = Optimiser.optimise(instructions, report, options.numbers);
+    }
+    return resolve(instructions, report, options);
+  }
+
+  /**
+   * This runs the program with every variable starting from nothing.
+   *
+   * @return Dictionary of variables at the end, in the order they were created
+   * @throws ArithmeticException The program divided by zero, or overflowed in the long mode
+   * @throws CallDepthException The program had too many calls running at once
+   * @throws IllegalStateException The program was stopped by a step or time limit
+   */
+  public Map<String, Number> run() {
+    return run(Map.of());
+  }
+
+  /**
+   * This runs the program, with some variables given values before it starts.
+   * Inputs exist from the start, so they come first in the order variables were created. Inputs
+   * which the program never uses are returned as they were given, whether or not the optimiser
+   * removed every use of them, and in the int mode inputs wrap like an int.
+   *
+   * @param inputs Starting value of each input variable, by name
+   * @return Dictionary of variables at the end, in the order they were created
+   * @throws ArithmeticException The program divided by zero, or overflowed in the long mode
+   * @throws CallDepthException The program had too many calls running at once
+   * @throws IllegalStateException The program was stopped by a step or time limit
+   */
+  public Map<String, Number> run(Map<String, Long> inputs) {
+    return finish(execute(inputs));
+  }
+
+  /**
+   * This runs the program in the interpreter, telling a listener about each step, such as a tracer
+   * or a recorder. A tracer keeps its steps if the program stops with an error, so they can be
+   * dumped.
+   *
+   * @param inputs   Starting value of each input variable, by name
+   * @param listener Used to record the steps, which must belong to this program
+   * @return Dictionary of variables at the end, in the order they were created
+   * @throws ArithmeticException The program divided by zero, or overflowed in the long mode
+   * @throws CallDepthException The program had too many calls running at once
+   * @throws IllegalStateException The program was stopped by a step or time limit
+   */
+  public Map<String, Number> run(Map<String, Long> inputs, Executor.Listener listener) {
+    return finish(execute(inputs, new Executor(this, options, listener)));
+  }
+
+  /**
+   * This runs the program under the step and time limits it was compiled with. A run which reaches
+   * a limit is stopped at the next loop back edge, and its result keeps the variables it had
+   * reached instead of throwing.
+   *
+   * <p>Inputs can be any of the values a run returns, so the variables at the end of one program
+   * can be given to the next. BigInteger inputs are only kept whole in the big mode.
+   *
+   * @param inputs Starting value of each input variable, by name
+   * @return How the run ended, with the variables at the end
+   * @throws ArithmeticException The program divided by zero, or overflowed in the long mode
+   * @throws CallDepthException The program had too many calls running at once
+   */
+  public Result execute(Map<String, ? extends Number> inputs) {
+    return execute(inputs, executor());
+  }
+
+  /**
+   * This gets the variables of a run which finished.
+   *
+   * @param result Result of the run
+   * @return Dictionary of variables at the end
+   * @throws IllegalStateException The run was stopped by a limit
+   */
+  private static Map<String, Number> finish(Result result) {
+    if (!result.finished()) {
+      throw new IllegalStateException(Result.message(result.status(), result.steps()));
+    }
+    return result.variables();
+  }
+
+  /**
+   * This runs the program with an executor.
+   *
+   * @param inputs   Starting value of each input variable, by name
+   * @param executor Executor to run it with
+   * @return How the run ended, with the variables at the end
+   */
+  private Result execute(Map<String, ? extends Number> inputs, Executor executor) {
+    State state = new State(this);
+    for (Map.Entry<String, ? extends Number> input : inputs.entrySet()) {
+      Integer slot = slots.get(input.getKey());
+      if (slot != null) {
+        state.define(slot);
+        Number value = input.getValue();
+        if (value instanceof BigInteger big && state.big != null && big.bitLength() > 63) {
+          state.big[slot] = big;
+        } else {
+          state.values[slot] = numbers == Numbers.INT ? value.intValue() : value.longValue();
+        }
+      }
+    }
+    executor.run(state);
+
+    //Every input exists from the start, even one the optimised program has no slot for
+    Map<String, Number> variables = new LinkedHashMap<>();
+    for (Map.Entry<String, ? extends Number> input : inputs.entrySet()) {
+      variables.put(input.getKey(), input(input.getValue()));
+    }
+    for (int i = 0; i < state.count; i++) {
+      variables.put(names[state.order[i]], state.value(state.order[i]));
+    }
+    Result.Status status = state.stopped != null ? state.stopped : Result.Status.FINISHED;
+    return new Result(status, state.charged, Collections.unmodifiableMap(variables));
+  }
+
+  /**
+   * This gives the value an input starts with in the program's numeric mode.
+   *
+   * @param value Value given for the input
+   * @return The value as the program holds it
+   */
+  private Number input(Number value) {
+    if (value instanceof BigInteger big && numbers == Numbers.BIG && big.bitLength() > 63) {
+      return big;
+    }
+    return numbers == Numbers.INT ? (long) value.intValue() : value.longValue();
+  }
+
+  /**
+   * This gets the executor for the engine the program was compiled for, making it if this is the
+   * first run.
+   *
+   * @return The executor
+   */
+  private Executor executor() {
+    Executor result = executor;
+    if (result == null) {
+      synchronized (this) {
+        result = executor;
+        if (result == null) {
+          result = new Executor(this, options);
+          executor = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * This gives every variable a slot, in the order they first appear.
+   * It also works out which instructions might use a variable before it exists, so only those
+   * instructions have to create variables while running.
+   *
+   * @param instructions This stores the linked program
+   * @param report       Number of instructions removed by each optimisation
+   * @param options      Options the program was compiled with
+   * @return This will return the compiled program
+   */
+  static Program resolve(Instruction[] instructions, Map<String, Integer> report, Options options) {
+    Map<String, Integer> slots = new LinkedHashMap<>();
+    Instruction[] resolved = new Instruction[instructions.length];
+    //Every array is declared outside any block, so its declaration is never removed
+    Map<String, Integer> lengths = new HashMap<>();
+    for (Instruction instruction : instructions) {
+      if (instruction.opcode == Opcode.ARRAY) {
+        lengths.put(instruction.array.name, instruction.array.length);
+      }
+    }
+
+    //Variables which definitely exist at the current instruction
+    BitSet known = new BitSet();
+    //Variables known at the start of each open block, and after the last condition of each open if
+    Deque<BitSet> blocks = new ArrayDeque<>();
+    Deque<BitSet> conditions = new ArrayDeque<>();
+
+    for (int i = 0; i < instructions.length; i++) {
+      Instruction instruction = instructions[i];
+      int aSlot = slot(instruction.a, slots, lengths);
+      int bSlot = slot(instruction.b, slots, lengths);
+      LoopSummary summary = null;
+      if (instruction.summary != null) {
+        for (String name : instruction.summary.names) {
+          slot(name, slots, lengths);
+        }
+        summary = instruction.summary.resolve(slots);
+      }
+      ArrayOperation array = null;
+      int index = -1;
+      if (instruction.array != null) {
+        index = slot(instruction.array.index, slots, lengths);
+        slot(ArrayOperation.element(instruction.array.name, 0), slots, lengths);
+        if (instruction.array.other != null) {
+          slot(ArrayOperation.element(instruction.array.other, 0), slots, lengths);
+        }
+        array = instruction.array.resolve(slots);
+      }
+
+      //Else if and else only run after every previous condition in the if statement failed
+      if (instruction.opcode == Opcode.ELSE_IF || instruction.opcode == Opcode.ELSE) {
+        known = (BitSet) conditions.peek().clone();
+      }
+
+      boolean define = (aSlot != -1 && !known.get(aSlot)) || (bSlot != -1 && !known.get(bSlot))
+          || (index != -1 && !known.get(index));
+      resolved[i] = instruction.resolve(aSlot, bSlot, define, summary, array);
+      for (int slot : new int[]{aSlot, bSlot, index}) {
+        if (slot != -1) {
+          known.set(slot);
+        }
+      }
+
+      switch (instruction.opcode) {
+        //Anything created inside a block might not exist after it, since the block might not run
+        case WHILE -> blocks.push((BitSet) known.clone());
+        case END, DECR_END -> known = blocks.pop();
+        case IF -> {
+          blocks.push((BitSet) known.clone());
+          conditions.push((BitSet) known.clone());
+        }
+        case ELSE_IF -> {
+          conditions.pop();
+          conditions.push((BitSet) known.clone());
+        }
+        case ENDIF -> {
+          conditions.pop();
+          known = blocks.pop();
+        }
+        //The next copy of a subroutine's body can be called before any variable exists
+        case RETURN -> known = new BitSet();
+        default -> {
+        }
+      }
+    }
+
+    return new Program(resolved, slots.keySet().toArray(new String[0]), report, options);
+  }
+
+  /**
+   * This finds the slot for a variable, giving it the next free slot if it does not have one.
+   * An element of an array gives the whole array the next free slots, in order.
+   *
+   * @param name    Name of the variable, or null if the operand is a literal
+   * @param slots   Slots given out so far
+   * @param lengths Number of elements in each array, by name
+   * @return The slot of the variable, or -1 if the operand is a literal
+   */
+  private static int slot(String name, Map<String, Integer> slots, Map<String, Integer> lengths) {
+    if (name == null) {
+      return -1;
+    }
+    int bracket = name.indexOf('[');
+    if (bracket != -1 && !slots.containsKey(name)) {
+      String array = name.substring(0, bracket);
+      for (int i = 0; i < lengths.get(array); i++) {
+        slots.put(ArrayOperation.element(array, i), slots.size());
+      }
+    }
+    return slots.computeIfAbsent(name, key -> slots.size());
+  }
+}
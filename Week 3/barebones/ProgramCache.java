@@ -0,0 +1,373 @@
+package barebones;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * This stores compiled programs in a directory, so running the same program again skips parsing,
+ * linking and optimising.
+ *
+ * <p>Each program is stored in a file named by the SHA-256 hash of its source and of the options
+ * which change how it is compiled. Files are read back through a memory map. They start with a
+ * format version, and a file with a different version, or which cannot be read, is compiled again
+ * and replaced.
+ *
+ * <p>The format is big endian. After the magic number and version come the numeric mode and
+ * whether the program was optimised, then the name of each slot, the optimisation report, and the
+ * instructions with their jump table, loop summaries, the subroutine and variables of each call and
+ * the arrays of each array instruction.
+ * Names of variables are only stored once, in the slot table, and instructions refer to them by
+ * slot.
+ */
+final class ProgramCache {
+  static final int MAGIC = 0x42424331; //"BBC1"
+  static final int VERSION = 3; //Changed whenever the format, opcodes or passes change
+
+  private ProgramCache() {
+  }
+
+  /**
+   * This gets a compiled program from the cache, compiling and storing it if it is not there.
+   * A cache which cannot be written to is ignored, so the program still runs.
+   *
+   * @param program This stores the program as lines of text
+   * @param options Options the program is compiled with, including the cache directory
+   * @return This will return the compiled program
+   * @throws IllegalArgumentException The program is not valid
+   */
+  static Program compile(List<String> program, Options options) {
+    Path file = options.cache.resolve(key(program, options) + ".bbc");
+
+    if (Files.isRegularFile(file)) {
+      Events.Load event = Events.recording() ? new Events.Load() : null;
+      if (event != null) {
+        event.begin();
+      }
+      try {
+        Program cached = read(file, options);
+        if (cached != null) {
+          if (event != null && event.shouldCommit()) {
+            event.file = file.toString();
+            event.instructions = cached.instructions.length;
+            event.commit();
+          }
+          return cached;
+        }
+      } catch (IOException | RuntimeException e) {
+        //Damaged entry, so it is compiled again and replaced
+      }
+    }
+
+    Program compiled = Program.build(program, options);
+    try {
+      write(file, compiled, options);
+    } catch (IOException e) {
+      //Cache not writable, so the program is compiled every time
+    }
+    return compiled;
+  }
+
+  /**
+   * This works out the name of a program's file from its source and options.
+   *
+   * @param program This stores the program as lines of text
+   * @param options Options the program is compiled with
+   * @return The hash as hex
+   */
+  static String key(List<String> program, Options options) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update((options.numbers + " " + options.optimise + "\n").getBytes(StandardCharsets.UTF_8));
+      for (String line : program) {
+        digest.update(line.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+      }
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * This writes a compiled program to its file. It is written to a temporary file first and moved
+   * into place, so a program being read by another process is never half written.
+   *
+   * @param file    File to write
+   * @param program Compiled program
+   * @param options Options the program was compiled with
+   * @throws IOException Writing the file gone wrong
+   */
+  static void write(Path file, Program program, Options options) throws IOException {
+    Files.createDirectories(file.getParent());
+    Path temporary = Files.createTempFile(file.getParent(), "bbc", ".tmp");
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeByte(options.numbers.ordinal());
+      out.writeBoolean(options.optimise);
+      writeProgram(out, program);
+    } catch (IOException e) {
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+
+    try {
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+  }
+
+  /**
+   * This writes the slot table, optimisation report and instructions of a compiled program.
+   * It is also used to hash a program, so the same compiled program always writes the same bytes.
+   *
+   * @param out     Used to write the program
+   * @param program Compiled program
+   * @throws IOException Writing gone wrong
+   */
+  static void writeProgram(DataOutputStream out, Program program) throws IOException {
+    out.writeInt(program.names.length);
+    for (String name : program.names) {
+      writeString(out, name);
+    }
+    out.writeInt(program.report.size());
+    for (Map.Entry<String, Integer> entry : program.report.entrySet()) {
+      writeString(out, entry.getKey());
+      out.writeInt(entry.getValue());
+    }
+
+    out.writeInt(program.instructions.length);
+    for (Instruction instruction : program.instructions) {
+      out.writeByte(instruction.opcode.ordinal());
+      out.writeInt(instruction.aSlot);
+      out.writeLong(instruction.aValue);
+      out.writeInt(instruction.bSlot);
+      out.writeLong(instruction.bValue);
+      out.writeByte(instruction.operator == null ? -1 : instruction.operator.ordinal());
+      out.writeInt(instruction.line);
+      out.writeInt(instruction.jump);
+      out.writeInt(instruction.exit);
+      out.writeBoolean(instruction.define);
+      out.writeLong(instruction.immediate);
+      out.writeInt(instruction.fused);
+      writeSummary(out, instruction.summary);
+      out.writeInt(instruction.arguments == null ? -1 : instruction.arguments.length);
+      if (instruction.arguments != null) {
+        for (String argument : instruction.arguments) {
+          writeString(out, argument);
+        }
+      }
+      writeArray(out, instruction.array);
+    }
+  }
+
+  /**
+   * This writes the array used by an array instruction, or a -1 for an instruction without one.
+   * The variable choosing an element and the other array are written as slots.
+   *
+   * @param out   Used to write the file
+   * @param array Array used, or null
+   * @throws IOException Writing the file gone wrong
+   */
+  private static void writeArray(DataOutputStream out, ArrayOperation array) throws IOException {
+    if (array == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(array.length);
+    writeString(out, array.name);
+    out.writeInt(array.base);
+    out.writeByte(array.arithmetic == null ? -1 : array.arithmetic.ordinal());
+    out.writeInt(array.indexSlot);
+    out.writeInt(array.otherBase);
+  }
+
+  /**
+   * This writes the closed form of a summarised loop, or a zero for an instruction without one.
+   *
+   * @param out     Used to write the file
+   * @param summary Closed form of the loop, or null
+   * @throws IOException Writing the file gone wrong
+   */
+  private static void writeSummary(DataOutputStream out, LoopSummary summary) throws IOException {
+    if (summary == null) {
+      out.writeInt(0);
+      return;
+    }
+    out.writeInt(summary.slots.length);
+    for (int slot : summary.slots) {
+      out.writeInt(slot);
+    }
+    for (int[] row : summary.matrix) {
+      for (int value : row) {
+        out.writeInt(value);
+      }
+    }
+    out.writeInt(summary.counter);
+    out.writeInt(summary.step);
+    out.writeInt(summary.first.length);
+    for (int index : summary.first) {
+      out.writeInt(index);
+    }
+  }
+
+  /**
+   * This writes a string as its length then its UTF-8 bytes.
+   *
+   * @param out  Used to write the file
+   * @param text Text to write
+   * @throws IOException Writing the file gone wrong
+   */
+  private static void writeString(DataOutputStream out, String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * This reads a compiled program from its file through a memory map.
+   *
+   * @param file    File to read
+   * @param options Options the program is being compiled with
+   * @return The program, or null if the file is from another version or other options
+   * @throws IOException Reading the file gone wrong
+   */
+  static Program read(Path file, Options options) throws IOException {
+    MappedByteBuffer in;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    try {
+      if (in.getInt() != MAGIC || in.getInt() != VERSION
+          || in.get() != options.numbers.ordinal() || (in.get() != 0) != options.optimise) {
+        return null;
+      }
+
+      String[] names = new String[in.getInt()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = readString(in);
+      }
+      Map<String, Integer> report = new LinkedHashMap<>();
+      for (int i = in.getInt(); i > 0; i--) {
+        report.put(readString(in), in.getInt());
+      }
+
+      Opcode[] opcodes = Opcode.values();
+      Comparison[] comparisons = Comparison.values();
+      Instruction[] instructions = new Instruction[in.getInt()];
+      for (int i = 0; i < instructions.length; i++) {
+        Opcode opcode = opcodes[in.get()];
+        int aSlot = in.getInt();
+        long aValue = in.getLong();
+        int bSlot = in.getInt();
+        long bValue = in.getLong();
+        byte operator = in.get();
+        int line = in.getInt();
+        int jump = in.getInt();
+        int exit = in.getInt();
+        boolean define = in.get() != 0;
+        long immediate = in.getLong();
+        int fused = in.getInt();
+        LoopSummary summary = readSummary(in, names);
+        String[] arguments = null;
+        int count = in.getInt();
+        if (count != -1) {
+          arguments = new String[count];
+          for (int j = 0; j < count; j++) {
+            arguments[j] = readString(in);
+          }
+        }
+        ArrayOperation array = readArray(in, names);
+
+        instructions[i] = new Instruction(opcode, aSlot == -1 ? null : names[aSlot], aSlot, aValue,
+            bSlot == -1 ? null : names[bSlot], bSlot, bValue, operator == -1 ? null : comparisons[operator],
+            line, jump, exit, define, summary, immediate, fused, arguments, array);
+      }
+      if (in.hasRemaining()) {
+        return null;
+      }
+      return new Program(instructions, names, report, options);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+      return null; //Truncated or damaged
+    }
+  }
+
+  /**
+   * This reads the closed form of a summarised loop.
+   *
+   * @param in    Mapped file
+   * @param names Name of the variable in each slot
+   * @return The closed form, or null if the instruction does not have one
+   */
+  private static LoopSummary readSummary(ByteBuffer in, String[] names) {
+    int size = in.getInt();
+    if (size == 0) {
+      return null;
+    }
+    int[] slots = new int[size];
+    String[] loopNames = new String[size];
+    for (int i = 0; i < size; i++) {
+      slots[i] = in.getInt();
+      loopNames[i] = names[slots[i]];
+    }
+    int[][] matrix = new int[size + 1][size + 1];
+    for (int[] row : matrix) {
+      for (int j = 0; j < row.length; j++) {
+        row[j] = in.getInt();
+      }
+    }
+    int counter = in.getInt();
+    int step = in.getInt();
+    int[] first = new int[in.getInt()];
+    for (int i = 0; i < first.length; i++) {
+      first[i] = in.getInt();
+    }
+    return new LoopSummary(loopNames, slots, matrix, counter, step, first);
+  }
+
+  /**
+   * This reads the array used by an array instruction.
+   *
+   * @param in    Mapped file
+   * @param names Name of the variable in each slot
+   * @return The array, or null if the instruction does not use one
+   */
+  private static ArrayOperation readArray(ByteBuffer in, String[] names) {
+    int length = in.getInt();
+    if (length == -1) {
+      return null;
+    }
+    String name = readString(in);
+    int base = in.getInt();
+    byte arithmetic = in.get();
+    int indexSlot = in.getInt();
+    int otherBase = in.getInt();
+    String other = otherBase == -1 ? null : names[otherBase].substring(0, names[otherBase].indexOf('['));
+    return new ArrayOperation(name, length, base, arithmetic == -1 ? null : Opcode.values()[arithmetic],
+        indexSlot == -1 ? null : names[indexSlot], indexSlot, other, otherBase);
+  }
+
+  /**
+   * This reads a string written as its length then its UTF-8 bytes.
+   *
+   * @param in Mapped file
+   * @return The string
+   */
+  private static String readString(ByteBuffer in) {
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
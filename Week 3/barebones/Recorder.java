@@ -0,0 +1,301 @@
+package barebones;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This records every step of a run to a file, so it can be replayed afterwards with {@link Replay}.
+ * Unlike a tracer, which only keeps the last steps, the whole history is kept, so runs of millions
+ * of steps can be stepped through backwards and forwards.
+ *
+ * <p>The file is written through a memory map, which is grown a region at a time, and is only ever
+ * appended to. After a header with the name of each slot and the line and text of each instruction,
+ * each step is a record of a tag byte and varints: the distance of its address from the one after
+ * the last step, the variables it created, and for each variable it changed, the difference from
+ * the value it had before. Most steps take three or four bytes.
+ *
+ * <p>Every {@link #INTERVAL} steps, a snapshot of every variable is written, so a replay can start
+ * from the closest one instead of the beginning. When the recorder is closed, an index of the
+ * snapshots is written at the end. A file without one, such as from a run which was killed, can
+ * still be replayed up to its last whole step.
+ *
+ * <p>Values are recorded as longs, so the big numeric mode cannot be recorded.
+ */
+public final class Recorder implements Executor.Listener, Closeable {
+  static final int MAGIC = 0x42425431; //"BBT1"
+  static final int END_MAGIC = 0x42425445; //"BBTE", at the very end of a closed file
+  static final int VERSION = 1;
+  static final int INTERVAL = 4096; //Steps between snapshots
+
+  //Record tags, whose low two bits are the kind of record, so a zero byte is never a record
+  static final int STEP = 1;
+  static final int SNAPSHOT = 2;
+  static final int END = 3;
+  static final int CHANGES = 4; //Flag on a step which changed variables
+  static final int DEFINES = 8; //Flag on a step which created variables
+
+  private static final int REGION = 1 << 26; //Bytes mapped at a time
+  private static final int[] NONE = {}; //Slots changed by an instruction which changes none
+
+  private final FileChannel channel;
+  private MappedByteBuffer buffer; //Mapped region being written
+  private long base; //Position of the mapped region in the file
+  private final long[] last; //Value of each slot as of the last record
+  private final int[][] elements; //Slots of the elements each array instruction can change, made when it first runs
+  private int defined; //Variables which existed as of the last record
+  private int lastAddress = -1; //Address of the last instruction recorded
+  private long steps; //Number of steps recorded
+  private long[] index = new long[32]; //Step and position of each snapshot, in pairs
+  private int snapshots; //Number of snapshots written
+  private boolean closed;
+
+  /**
+   * This creates a recorder writing to a file, replacing it if it exists.
+   *
+   * @param program Program being recorded
+   * @param file    File the steps are written to
+   * @throws IOException Creating the file gone wrong
+   * @throws IllegalArgumentException The program uses the big numeric mode
+   */
+  public Recorder(Program program, Path file) throws IOException {
+    if (program.numbers == Numbers.BIG) {
+      throw new IllegalArgumentException("Invalid Argument: big numbers cannot be recorded");
+    }
+    last = new long[program.names.length];
+    elements = new int[program.instructions.length][];
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION);
+
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    putVarint(INTERVAL);
+    putVarint(program.names.length);
+    for (String name : program.names) {
+      putString(name);
+    }
+    putVarint(program.instructions.length);
+    for (Instruction instruction : program.instructions) {
+      ensure(5);
+      putVarint(instruction.line);
+      putString(instruction.opcode + " " + instruction);
+    }
+  }
+
+  @Override
+  public void start(State state) {
+    System.arraycopy(state.values, 0, last, 0, last.length);
+    defined = state.count;
+    snapshot(state);
+  }
+
+  @Override
+  public void step(int address, int programCounter, Instruction instruction, State state) {
+    int[] changed = switch (instruction.opcode) {
+      case CLEAR, INCR, DECR, MULT, DIV, MOD, SET, DECR_END, COUNT, LOAD, STORE -> null;
+      case LOOP -> instruction.summary.slots;
+      case EACH -> elements(address, instruction.array);
+      default -> NONE;
+    };
+    int created = state.count - defined;
+    ensure(16 + 5 * created + 15 * (changed == null ? 1 : changed.length));
+
+    int tagAt = buffer.position();
+    buffer.put((byte) 0); //Tag, written once the flags are known
+    putVarint(zigzag(address - lastAddress - 1));
+    lastAddress = address;
+    int tag = STEP;
+
+    if (created > 0) {
+      tag |= DEFINES;
+      putVarint(created);
+      for (int i = defined; i < state.count; i++) {
+        putVarint(state.order[i]);
+      }
+      defined = state.count;
+    }
+
+    if (changed == null) {
+      //A store changes just the element its index chose
+      int slot = instruction.opcode == Opcode.STORE ? instruction.array.element(instruction, state) : instruction.aSlot;
+      if (state.values[slot] != last[slot]) {
+        tag |= CHANGES;
+        putVarint(1);
+        change(slot, state);
+      }
+    } else if (changed.length > 0) {
+      int count = 0;
+      for (int slot : changed) {
+        if (state.values[slot] != last[slot]) {
+          count++;
+        }
+      }
+      if (count > 0) {
+        tag |= CHANGES;
+        putVarint(count);
+        for (int slot : changed) {
+          if (state.values[slot] != last[slot]) {
+            change(slot, state);
+          }
+        }
+      }
+    }
+    buffer.put(tagAt, (byte) tag);
+
+    if (++steps % INTERVAL == 0) {
+      snapshot(state);
+    }
+  }
+
+  /**
+   * This gets the slots of the elements a whole array instruction can change.
+   *
+   * @param address Address of the instruction
+   * @param array   Array it changes
+   * @return The slots
+   */
+  private int[] elements(int address, ArrayOperation array) {
+    if (elements[address] == null) {
+      elements[address] = new int[array.length];
+      Arrays.setAll(elements[address], i -> array.base + i);
+    }
+    return elements[address];
+  }
+
+  /**
+   * This writes the change to one variable as its slot and the difference from its last value.
+   *
+   * @param slot  Slot of the variable
+   * @param state Variables used by the program
+   */
+  private void change(int slot, State state) {
+    putVarint(slot);
+    putVarint(zigzag(state.values[slot] - last[slot]));
+    last[slot] = state.values[slot];
+  }
+
+  /**
+   * This writes every variable, in the order they were created, and adds it to the index.
+   *
+   * @param state Variables used by the program
+   */
+  private void snapshot(State state) {
+    ensure(32 + 15 * state.count);
+    if (snapshots * 2 == index.length) {
+      index = Arrays.copyOf(index, index.length * 2);
+    }
+    index[snapshots * 2] = steps;
+    index[snapshots * 2 + 1] = base + buffer.position();
+    snapshots++;
+
+    buffer.put((byte) SNAPSHOT);
+    putVarint(steps);
+    putVarint(lastAddress + 1);
+    putVarint(state.count);
+    for (int i = 0; i < state.count; i++) {
+      int slot = state.order[i];
+      putVarint(slot);
+      putVarint(zigzag(state.values[slot]));
+    }
+  }
+
+  /**
+   * This gets the number of steps recorded.
+   *
+   * @return Steps recorded
+   */
+  public long steps() {
+    return steps;
+  }
+
+  /**
+   * This ends the recording with the index of snapshots, and cuts the file to what was written.
+   *
+   * @throws IOException Writing the file gone wrong
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      ensure(25 + 16L * snapshots);
+      buffer.put((byte) END);
+      long footer = base + buffer.position();
+      buffer.putLong(steps);
+      buffer.putInt(snapshots);
+      for (int i = 0; i < snapshots * 2; i++) {
+        buffer.putLong(index[i]);
+      }
+      buffer.putLong(footer);
+      buffer.putInt(END_MAGIC);
+      long size = base + buffer.position();
+      buffer.force();
+      buffer = null;
+      channel.truncate(size);
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * This maps the next region of the file if the current one does not have enough room.
+   *
+   * @param bytes Bytes about to be written
+   */
+  private void ensure(long bytes) {
+    if (buffer.remaining() >= bytes) {
+      return;
+    }
+    try {
+      base += buffer.position();
+      buffer.force();
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, base, Math.max(REGION, bytes));
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write recording: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * This writes a number as a varint, seven bits at a time with the top bit set on all but the last
+   * byte.
+   *
+   * @param value Number to write, treated as unsigned
+   */
+  private void putVarint(long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  /**
+   * This writes a string as its length then its UTF-8 bytes.
+   *
+   * @param text Text to write
+   */
+  private void putString(String text) {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    ensure(10 + bytes.length);
+    putVarint(bytes.length);
+    buffer.put(bytes);
+  }
+
+  /**
+   * This maps a signed number to an unsigned one, so numbers close to zero have short varints.
+   *
+   * @param value Signed number
+   * @return The zigzag encoded number
+   */
+  static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+}
@@ -0,0 +1,291 @@
+package barebones;
+
+import java.lang.invoke.MethodHandle;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This splits the main program into regions which can run at the same time, for --parallel.
+ *
+ * <p>The statements outside any block are grouped into regions, with each one containing a while
+ * loop on its own and the statements between them together. Each region reads and writes a set of
+ * variables, and a region depends on every earlier region which writes a variable it uses, or uses
+ * a variable it writes. A region starts on the fork-join pool once the regions it depends on have
+ * finished, so regions which share nothing they change run at the same time.
+ *
+ * <p>Regions share the register file, since no two regions running at once change the same slot,
+ * but each keeps the order it created variables in. These are joined in program order once every
+ * region has finished, skipping variables already created, which gives exactly the order of running
+ * them one after another. When a region stops with an error, every later region in program order
+ * stops at its next back edge check, like a limit, and later regions which have not started are
+ * skipped. Earlier regions carry on, since one of them may stop with an error of its own, which
+ * running them in order would have reached first. Then the error of the first region in program
+ * order to stop with one is thrown.
+ *
+ * <p>Only programs without calls to subroutines which were not inlined are split, and only if they
+ * have at least two while loops outside any block.
+ */
+final class Regions {
+  static final int MOST = 1024; //Most regions a program is split into
+
+  private final int[] starts; //Address of the first instruction of each region
+  private final int[] ends; //Address after the last instruction of each region
+  private final int[][] dependencies; //Earlier regions each region waits for
+  private final MethodHandle[] compiled; //Each region compiled by the bytecode engine, or null if interpreted
+
+  private Regions(int[] starts, int[] ends, int[][] dependencies, MethodHandle[] compiled) {
+    this.starts = starts;
+    this.ends = ends;
+    this.dependencies = dependencies;
+    this.compiled = compiled;
+  }
+
+  /**
+   * This splits a program into regions, if it is worth it.
+   *
+   * @param program Program to split
+   * @param compile True to compile each region with the bytecode engine
+   * @return The regions, or null if the program should run as a whole
+   */
+  static Regions of(Program program, boolean compile) {
+    Instruction[] instructions = program.instructions;
+    List<Integer> starts = new ArrayList<>();
+    List<Integer> ends = new ArrayList<>();
+    int loops = 0;
+    int start = 0;
+    int address = 0;
+    while (address < instructions.length) {
+      Opcode opcode = instructions[address].opcode;
+      if (opcode == Opcode.CALL || opcode == Opcode.RETURN) {
+        return null;
+      }
+      int end = statement(instructions, address);
+      if (opcode == Opcode.WHILE) {
+        //A loop is a region of its own, after the statements before it
+        if (start < address) {
+          starts.add(start);
+          ends.add(address);
+        }
+        starts.add(address);
+        ends.add(end);
+        start = end;
+        loops++;
+      }
+      address = end;
+    }
+    if (start < instructions.length) {
+      starts.add(start);
+      ends.add(instructions.length);
+    }
+    if (loops < 2) {
+      return null;
+    }
+
+    //Neighbouring regions are joined until there are few enough
+    while (starts.size() > MOST) {
+      for (int i = 0; i + 1 < starts.size(); i++) {
+        starts.remove(i + 1);
+        ends.remove(i);
+      }
+    }
+
+    int size = starts.size();
+    int[] first = new int[size];
+    int[] after = new int[size];
+    MethodHandle[] handles = compile ? new MethodHandle[size] : null;
+    for (int i = 0; i < size; i++) {
+      first[i] = starts.get(i);
+      after[i] = ends.get(i);
+      if (compile) {
+        try {
+          handles[i] = BytecodeEngine.compile(program, first[i], after[i], true);
+        } catch (IllegalStateException e) {
+          //Too large to compile, so the region is interpreted
+        }
+      }
+    }
+    return new Regions(first, after, dependencies(program, first, after), handles);
+  }
+
+  /**
+   * This finds the address after a statement outside any block, which for a while or if is after
+   * its end or endif.
+   *
+   * @param instructions This stores the linked program
+   * @param address      Address of the statement
+   * @return The address after it
+   */
+  private static int statement(Instruction[] instructions, int address) {
+    int depth = 0;
+    do {
+      switch (instructions[address].opcode) {
+        case WHILE, IF -> depth++;
+        case END, DECR_END, ENDIF -> depth--;
+        default -> {
+        }
+      }
+      address++;
+    } while (depth > 0);
+    return address;
+  }
+
+  /**
+   * This works out which earlier regions each region depends on. A region depends on the last
+   * region before it to write each variable it uses, and on every region since then which read a
+   * variable it writes.
+   *
+   * @param program Program being split
+   * @param starts  Address of the first instruction of each region
+   * @param ends    Address after the last instruction of each region
+   * @return The earlier regions each region waits for
+   */
+  private static int[][] dependencies(Program program, int[] starts, int[] ends) {
+    int[] writer = new int[program.names.length];
+    Arrays.fill(writer, -1);
+    Map<Integer, List<Integer>> readers = new HashMap<>(); //Regions which read each slot since it was last written
+
+    int[][] dependencies = new int[starts.length][];
+    for (int region = 0; region < starts.length; region++) {
+      BitSet reads = new BitSet();
+      BitSet writes = new BitSet();
+      for (int address = starts[region]; address < ends[region]; address++) {
+        uses(program.instructions[address], reads, writes);
+      }
+
+      Set<Integer> waits = new TreeSet<>();
+      for (int slot = reads.nextSetBit(0); slot >= 0; slot = reads.nextSetBit(slot + 1)) {
+        if (writer[slot] != -1) {
+          waits.add(writer[slot]);
+        }
+        if (!writes.get(slot)) {
+          readers.computeIfAbsent(slot, key -> new ArrayList<>()).add(region);
+        }
+      }
+      for (int slot = writes.nextSetBit(0); slot >= 0; slot = writes.nextSetBit(slot + 1)) {
+        List<Integer> read = readers.remove(slot);
+        if (read != null) {
+          waits.addAll(read);
+        }
+        writer[slot] = region;
+      }
+      dependencies[region] = waits.stream().mapToInt(Integer::intValue).toArray();
+    }
+    return dependencies;
+  }
+
+  /**
+   * This adds the slots an instruction can read and write. Every slot it uses counts as read, and
+   * the variable it changes, or every variable of a summarised loop, counts as written.
+   *
+   * @param instruction Resolved instruction
+   * @param reads       Slots read, added to
+   * @param writes      Slots written, added to
+   */
+  private static void uses(Instruction instruction, BitSet reads, BitSet writes) {
+    if (instruction.summary != null) {
+      for (int slot : instruction.summary.slots) {
+        reads.set(slot);
+        writes.set(slot);
+      }
+      return;
+    }
+    if (instruction.aSlot != -1) {
+      reads.set(instruction.aSlot);
+    }
+    if (instruction.bSlot != -1) {
+      reads.set(instruction.bSlot);
+    }
+
+    ArrayOperation array = instruction.array;
+    if (array != null) {
+      //Creating any element creates them all, so a whole array is used together
+      reads.set(array.base, array.base + array.length);
+      if (array.otherBase != -1) {
+        reads.set(array.otherBase, array.otherBase + array.length);
+      }
+      if (array.indexSlot != -1) {
+        reads.set(array.indexSlot);
+      }
+    }
+
+    switch (instruction.opcode) {
+      case CLEAR, INCR, DECR, MULT, DIV, MOD, SET, DECR_END, COUNT, LOAD -> writes.set(instruction.aSlot);
+      case EACH, STORE -> writes.set(array.base, array.base + array.length);
+      default -> {
+      }
+    }
+  }
+
+  /**
+   * This runs every region, each once the regions it depends on have finished, then joins the
+   * variables they created into the run's state.
+   *
+   * @param state    Variables used by the program
+   * @param executor Executor running the program, which interprets regions which are not compiled
+   * @throws ArithmeticException A region stopped with an error
+   */
+  void run(State state, Executor executor) {
+    int size = starts.length;
+    State[] parts = new State[size];
+    Throwable[] errors = new Throwable[size];
+    List<CompletableFuture<Void>> futures = new ArrayList<>(size);
+    AtomicInteger failed = new AtomicInteger(Integer.MAX_VALUE); //First region to stop with an error so far
+
+    for (int region = 0; region < size; region++) {
+      int index = region;
+      parts[region] = new State(state, failed, region);
+      Runnable task = () -> {
+        if (failed.get() < index) {
+          return;
+        }
+        try {
+          if (compiled != null && compiled[index] != null) {
+            BytecodeEngine.invoke(compiled[index], parts[index]);
+          } else {
+            executor.interpret(parts[index], starts[index], ends[index]);
+          }
+        } catch (CancellationException e) {
+          //Stopped by an error in an earlier region
+        } catch (RuntimeException | Error e) {
+          errors[index] = e;
+          failed.accumulateAndGet(index, Math::min);
+        }
+      };
+      CompletableFuture<?>[] waits = new CompletableFuture<?>[dependencies[region].length];
+      for (int i = 0; i < waits.length; i++) {
+        waits[i] = futures.get(dependencies[region][i]);
+      }
+      futures.add(waits.length == 0 ? CompletableFuture.runAsync(task, ForkJoinPool.commonPool())
+          : CompletableFuture.allOf(waits).thenRunAsync(task, ForkJoinPool.commonPool()));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+    for (Throwable error : errors) {
+      if (error instanceof RuntimeException e) {
+        throw e;
+      } else if (error != null) {
+        throw (Error) error;
+      }
+    }
+    for (State part : parts) {
+      for (int i = 0; i < part.count; i++) {
+        state.define(part.order[i]);
+      }
+      state.dispatched += part.dispatched;
+      state.removed += part.removed;
+      state.backEdges += part.backEdges;
+    }
+  }
+
+  /**
+   * This checks if any region is compiled.
+   *
+   * @return True if the bytecode engine compiled at least one region
+   */
+  boolean compiled() {
+    return compiled != null && Arrays.stream(compiled).anyMatch(Objects::nonNull);
+  }
+}
@@ -0,0 +1,268 @@
+package barebones;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.*;
+
+/**
+ * This runs bare bones statements as they are typed, keeping the variables between them.
+ *
+ * <p>Each statement is compiled and run on its own, with the variables so far given to it as
+ * inputs, so nothing typed before is compiled or run again. A while loop or if statement is kept
+ * until its end or endif is typed, and then the whole block is compiled and run as one fragment.
+ * Fragments are compiled with the engine and options given, and compiled fragments are kept, so a
+ * statement typed again is not compiled again and keeps any loops the engine has compiled.
+ *
+ * <p>A subroutine typed is kept rather than run, and every subroutine so far is compiled with each
+ * fragment, after its lines so errors still give the line within the fragment. Typing a subroutine
+ * again replaces it.
+ *
+ * <p>An array declared is kept in the same way, and every array so far is declared after each
+ * fragment, so its elements are created and passed on like any other variables. Subroutines may use
+ * it, so it cannot be declared again with a different number of elements.
+ */
+public final class Repl {
+  private static final int KEPT = 256; //Compiled fragments kept
+
+  private final Options options;
+  private final Map<String, Program> programs; //Compiled fragments, least recently used first
+  private Map<String, Number> variables = new LinkedHashMap<>(); //Variables so far, in the order they were created
+  private final Map<String, String> arrays = new LinkedHashMap<>(); //Declaration of each array so far, by name
+  private final Map<String, List<String>> subroutines = new LinkedHashMap<>(); //Lines of each subroutine so far, by name
+  private final List<String> block = new ArrayList<>(); //Lines of the block being typed
+  private int depth; //Number of blocks open
+
+  /**
+   * This creates a REPL with no variables.
+   *
+   * @param options Options every fragment is compiled with
+   */
+  public Repl(Options options) {
+    //Each fragment is a separate program, so checkpoints of one would not resume the session
+    this.options = options.copy();
+    this.options.checkpoint = null;
+    this.options.resume = null;
+    programs = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Program> eldest) {
+        return size() > KEPT;
+      }
+    };
+  }
+
+  /**
+   * This is used to get commandline inputs and start the REPL.
+   *
+   * @param args Any of the interpreter's options, used for every fragment
+   */
+  public static void main(String[] args) {
+    Repl repl;
+    try {
+      repl = new Repl(Options.parse(args));
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.exit(1);
+      return;
+    }
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+    System.out.println("" +
+        "- - - - - - - - - - - - - -\n   Crossy's Interpreter\n- - - - - - - - - - - - - -");
+    System.out.println("Type statements to run them, vars to output the variables, reset to clear them or quit");
+    try {
+      while (true) {
+        System.out.print(repl.depth > 0 ? ". " : "> ");
+        String line = reader.readLine();
+        if (line == null) {
+          break;
+        }
+        switch (line.trim().toLowerCase()) {
+          case "q", "quit" -> {
+            return;
+          }
+          case "vars" -> output(repl.variables());
+          case "reset" -> repl.reset();
+          default -> {
+            Map<String, Number> before = repl.variables();
+            try {
+              Result result = repl.enter(line);
+              if (result != null) {
+                if (!result.finished()) {
+                  System.out.println(Result.message(result.status(), result.steps()));
+                }
+                //Only the variables the fragment created or changed are output
+                for (Map.Entry<String, Number> variable : repl.variables().entrySet()) {
+                  if (!variable.getValue().equals(before.get(variable.getKey()))) {
+                    System.out.println(variable.getKey() + ": " + variable.getValue());
+                  }
+                }
+              }
+            } catch (IllegalArgumentException | ArithmeticException | CallDepthException e) {
+              //Displays error for unknown code, dividing by zero, overflowing or too many calls
+              System.out.println(e.getMessage());
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      System.out.println("Error occurred");
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  /**
+   * This takes a line typed by the user. A line which finishes a statement or block runs it, and a
+   * line inside a block is kept until the block is closed. A line which is not valid is dropped,
+   * and the rest of the block is kept.
+   *
+   * @param line Line of code
+   * @return How the fragment ran, or null if a block is still open or the line did not run anything
+   * @throws IllegalArgumentException The line, or the block it closes, is not valid
+   * @throws ArithmeticException The fragment divided by zero, or overflowed in the long mode
+   * @throws CallDepthException The fragment made too many calls running at once
+   */
+  public Result enter(String line) {
+    int blocks = Parser.blocks(line);
+    String text = line.trim();
+    if (depth == 0 && (text.isEmpty() || text.startsWith("//"))) {
+      return null; //Blank line or comment
+    }
+    block.add(line);
+    depth += blocks;
+    if (depth > 0) {
+      return null;
+    }
+
+    List<String> fragment = new ArrayList<>(block);
+    block.clear();
+    depth = 0;
+    if (fragment.get(0).trim().startsWith("def ")) {
+      define(fragment);
+      return null;
+    }
+    if (text.startsWith("array ")) {
+      return declare(text);
+    }
+    return run(fragment);
+  }
+
+  /**
+   * This keeps a subroutine, replacing any with the same name. It is checked by compiling it with
+   * every other subroutine.
+   *
+   * @param lines Lines of the subroutine, from its def to its enddef
+   * @throws IllegalArgumentException The subroutine is not valid
+   */
+  private void define(List<String> lines) {
+    String name = lines.get(0).trim().split("[ ;]")[1];
+    List<String> previous = subroutines.put(name, lines);
+    try {
+      Program.compile(definitions(), options);
+    } catch (IllegalArgumentException e) {
+      if (previous == null) {
+        subroutines.remove(name);
+      } else {
+        subroutines.put(name, previous);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * This keeps an array and runs its declaration, which creates its elements. Declaring it again
+   * with the same number of elements does nothing.
+   *
+   * @param text Line declaring the array
+   * @return How the declaration ran, or null if the array was already declared
+   * @throws IllegalArgumentException The declaration is not valid, or the array was declared with a
+   *                                  different number of elements
+   */
+  private Result declare(String text) {
+    String name = text.split(" ")[1];
+    String previous = arrays.get(name);
+    if (previous != null) {
+      if (previous.equals(text)) {
+        return null;
+      }
+      throw ArrayOperation.error(text, 1, "has the same name as the array declared by '" + previous + "'");
+    }
+    arrays.put(name, text);
+    try {
+      return run(new ArrayList<>());
+    } catch (IllegalArgumentException e) {
+      arrays.remove(name);
+      throw e;
+    }
+  }
+
+  /**
+   * This gets the lines declaring every array and subroutine so far.
+   *
+   * @return Lines of code
+   */
+  private List<String> definitions() {
+    List<String> lines = new ArrayList<>(arrays.values());
+    for (List<String> subroutine : subroutines.values()) {
+      lines.addAll(subroutine);
+    }
+    return lines;
+  }
+
+  /**
+   * This compiles a fragment, or gets it from the fragments kept, and runs it with the variables so
+   * far. The variables are only changed if it runs without an error.
+   *
+   * @param fragment Lines of code, with every block closed
+   * @return How the fragment ran
+   * @throws IllegalArgumentException The fragment is not valid
+   * @throws ArithmeticException The fragment divided by zero, or overflowed in the long mode
+   */
+  private Result run(List<String> fragment) {
+    fragment.addAll(definitions());
+    String key = String.join("\n", fragment);
+    Program program = programs.get(key);
+    if (program == null) {
+      program = Program.compile(fragment, options);
+      programs.put(key, program);
+    }
+
+    Result result = program.execute(variables);
+    //Variables which already existed keep their place, and new ones follow in the order they were created
+    Map<String, Number> next = new LinkedHashMap<>(variables);
+    next.putAll(result.variables());
+    variables = next;
+    return result;
+  }
+
+  /**
+   * This gets the variables so far.
+   *
+   * @return Dictionary of variables, in the order they were created
+   */
+  public Map<String, Number> variables() {
+    return Collections.unmodifiableMap(variables);
+  }
+
+  /**
+   * This removes every variable and any block being typed. Compiled fragments are kept.
+   */
+  public void reset() {
+    variables = new LinkedHashMap<>();
+    block.clear();
+    depth = 0;
+  }
+
+  /**
+   * This method will iterate though the dictionary of variables and output name and value.
+   *
+   * @param variables This stores the variables which will be displayed
+   */
+  private static void output(Map<String, Number> variables) {
+    System.out.println(" - - - - Variables - - - - ");
+    for (Map.Entry<String, Number> variable : variables.entrySet()) {
+      System.out.println(variable.getKey() + ": " + variable.getValue());
+    }
+  }
+}
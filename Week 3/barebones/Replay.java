@@ -0,0 +1,370 @@
+package barebones;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * This replays a run written by a {@link Recorder}, rebuilding the variables as they were after any
+ * step. Going to a step starts from the closest snapshot before it, so at most a snapshot interval
+ * of steps are read, however long the run was. Stepping backwards is going to the step before.
+ *
+ * <p>The recording holds the names and instructions of the program, so the program itself is not
+ * needed.
+ */
+public final class Replay {
+  private final MappedByteBuffer in;
+  private final String[] names; //Name of the variable in each slot
+  private final int[] lines; //Line each instruction came from
+  private final String[] texts; //Text of each instruction
+  private final long steps; //Number of steps recorded
+  private final long[] index; //Step and position of each snapshot, in pairs
+  private final int snapshots; //Number of snapshots
+
+  private final long[] values; //Value of each slot after the current step
+  private final int[] order; //Slots in the order their variables were created
+  private int count; //Number of variables which exist
+  private long step; //Current step, where 0 is before the first instruction
+  private int address = -1; //Address of the instruction run at the current step
+  private int position; //Position of the record after the current step
+
+  /**
+   * This opens a recording.
+   *
+   * @param file File written by a recorder
+   * @throws IOException Reading the file gone wrong
+   * @throws IllegalArgumentException The file is not a recording, or is too large
+   */
+  public Replay(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Invalid Recording: too large to replay");
+      }
+      in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    try {
+      if (in.getInt() != Recorder.MAGIC || in.getInt() != Recorder.VERSION) {
+        throw new IllegalArgumentException("Invalid Recording: " + file);
+      }
+      getVarint(); //Snapshot interval
+      names = new String[(int) getVarint()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = getString();
+      }
+      lines = new int[(int) getVarint()];
+      texts = new String[lines.length];
+      for (int i = 0; i < lines.length; i++) {
+        lines[i] = (int) getVarint();
+        texts[i] = getString();
+      }
+      values = new long[names.length];
+      order = new int[names.length];
+      int start = in.position();
+
+      //A closed recording ends with the index of snapshots, otherwise the records are scanned
+      int size = in.limit();
+      if (size - start >= 12 && in.getInt(size - 4) == Recorder.END_MAGIC) {
+        in.position((int) in.getLong(size - 12));
+        steps = in.getLong();
+        snapshots = in.getInt();
+        index = new long[snapshots * 2];
+        for (int i = 0; i < index.length; i++) {
+          index[i] = in.getLong();
+        }
+      } else {
+        long[] found = new long[32];
+        int count = 0;
+        long step = 0;
+        in.position(start);
+        while (in.hasRemaining()) {
+          int at = in.position();
+          int tag = in.get();
+          int kind = tag & 3;
+          if ((kind != Recorder.STEP && kind != Recorder.SNAPSHOT) || !skip(tag)) {
+            break; //End, the part of the file not yet written, or the last record cut off
+          }
+          if (kind == Recorder.STEP) {
+            step++;
+          } else {
+            if (count * 2 == found.length) {
+              found = Arrays.copyOf(found, found.length * 2);
+            }
+            found[count * 2] = step;
+            found[count * 2 + 1] = at;
+            count++;
+          }
+        }
+        steps = step;
+        snapshots = count;
+        index = Arrays.copyOf(found, count * 2);
+      }
+      if (snapshots == 0) {
+        throw new IllegalArgumentException("Invalid Recording: " + file);
+      }
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+      throw new IllegalArgumentException("Invalid Recording: " + file);
+    }
+    load((int) index[1]);
+  }
+
+  /**
+   * This is used to open a recording and step through it, or output one step.
+   *
+   * @param args The recording, then optionally the step to output
+   */
+  public static void main(String[] args) {
+    try {
+      if (args.length < 1 || args.length > 2) {
+        throw new IllegalArgumentException("Usage: java barebones.Replay <recording> [step]");
+      }
+      Replay replay = new Replay(Paths.get(args[0]));
+      if (args.length == 2) {
+        replay.seek(step(args[1]));
+        replay.output();
+        return;
+      }
+
+      BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+      replay.output();
+      while (true) {
+        System.out.print("Next (n [count]), back (b [count]), goto (g step) or quit (q)\n> ");
+        String command = reader.readLine();
+        if (command == null) {
+          break;
+        }
+        String[] parts = command.trim().split("\\s+");
+        try {
+          switch (parts[0].toLowerCase()) {
+            case "", "n", "next" -> replay.seek(replay.step + (parts.length > 1 ? step(parts[1]) : 1));
+            case "b", "back" -> replay.seek(replay.step - (parts.length > 1 ? step(parts[1]) : 1));
+            case "g", "goto" -> replay.seek(step(parts.length > 1 ? parts[1] : ""));
+            case "q", "quit" -> {
+              return;
+            }
+            default -> throw new IllegalArgumentException("Err:" + command);
+          }
+          replay.output();
+        } catch (IllegalArgumentException e) {
+          System.out.println(e.getMessage());
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.exit(1);
+    } catch (IOException e) {
+      System.out.println("Unable to read recording: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * This reads a step number typed by the user.
+   *
+   * @param text Text typed
+   * @return The step
+   * @throws IllegalArgumentException The text is not a step
+   */
+  private static long step(String text) {
+    if (!text.matches("^[0-9]{1,18}$")) {
+      throw new IllegalArgumentException("Invalid Step: " + text);
+    }
+    return Long.parseLong(text);
+  }
+
+  /**
+   * This gets the number of steps recorded.
+   *
+   * @return Steps recorded
+   */
+  public long steps() {
+    return steps;
+  }
+
+  /**
+   * This gets the current step.
+   *
+   * @return The step, where 0 is before the first instruction
+   */
+  public long step() {
+    return step;
+  }
+
+  /**
+   * This rebuilds the variables as they were after a step. Steps past either end go to that end.
+   *
+   * @param target Step to go to, where 0 is before the first instruction
+   */
+  public void seek(long target) {
+    target = Math.max(0, Math.min(target, steps));
+    if (target < step || target - step > Recorder.INTERVAL) {
+      //Finds the last snapshot at or before the step
+      int low = 0;
+      int high = snapshots - 1;
+      while (low < high) {
+        int middle = (low + high + 1) >>> 1;
+        if (index[middle * 2] <= target) {
+          low = middle;
+        } else {
+          high = middle - 1;
+        }
+      }
+      load((int) index[low * 2 + 1]);
+    }
+
+    in.position(position);
+    while (step < target) {
+      int tag = in.get();
+      if ((tag & 3) == Recorder.STEP) {
+        apply(tag);
+      } else {
+        skip(tag);
+      }
+    }
+    position = in.position();
+  }
+
+  /**
+   * This reads a snapshot, replacing every variable.
+   *
+   * @param at Position of the snapshot
+   */
+  private void load(int at) {
+    in.position(at + 1);
+    step = getVarint();
+    address = (int) getVarint() - 1;
+    Arrays.fill(values, 0);
+    count = (int) getVarint();
+    for (int i = 0; i < count; i++) {
+      int slot = (int) getVarint();
+      order[i] = slot;
+      values[slot] = unzigzag(getVarint());
+    }
+    position = in.position();
+  }
+
+  /**
+   * This applies a step to the variables.
+   *
+   * @param tag Tag of the step, whose flags say what follows
+   */
+  private void apply(int tag) {
+    address += (int) unzigzag(getVarint()) + 1;
+    if ((tag & Recorder.DEFINES) != 0) {
+      for (long i = getVarint(); i > 0; i--) {
+        order[count++] = (int) getVarint();
+      }
+    }
+    if ((tag & Recorder.CHANGES) != 0) {
+      for (long i = getVarint(); i > 0; i--) {
+        int slot = (int) getVarint();
+        values[slot] += unzigzag(getVarint());
+      }
+    }
+    step++;
+  }
+
+  /**
+   * This reads past a record without applying it.
+   *
+   * @param tag Tag of the record
+   * @return False if the record was cut off
+   */
+  private boolean skip(int tag) {
+    try {
+      if ((tag & 3) == Recorder.SNAPSHOT) {
+        getVarint();
+        getVarint();
+        for (long i = getVarint() * 2; i > 0; i--) {
+          getVarint();
+        }
+      } else {
+        getVarint();
+        if ((tag & Recorder.DEFINES) != 0) {
+          for (long i = getVarint(); i > 0; i--) {
+            getVarint();
+          }
+        }
+        if ((tag & Recorder.CHANGES) != 0) {
+          for (long i = getVarint() * 2; i > 0; i--) {
+            getVarint();
+          }
+        }
+      }
+      return true;
+    } catch (BufferUnderflowException e) {
+      return false;
+    }
+  }
+
+  /**
+   * This gets the variables after the current step.
+   *
+   * @return Dictionary of variables, in the order they were created
+   */
+  public Map<String, Long> variables() {
+    Map<String, Long> variables = new LinkedHashMap<>();
+    for (int i = 0; i < count; i++) {
+      variables.put(names[order[i]], values[order[i]]);
+    }
+    return variables;
+  }
+
+  /**
+   * This outputs the current step, the instruction it ran and the variables after it.
+   */
+  private void output() {
+    System.out.println(" - - - - Step " + step + " of " + steps + " - - - - ");
+    if (address >= 0) {
+      System.out.println("PC: " + address);
+      System.out.println("Line " + lines[address] + ": " + texts[address]);
+    }
+    System.out.println(" - - - - Variables - - - - ");
+    for (Map.Entry<String, Long> variable : variables().entrySet()) {
+      System.out.println(variable.getKey() + ": " + variable.getValue());
+    }
+  }
+
+  /**
+   * This reads a varint, seven bits at a time with the top bit set on all but the last byte.
+   *
+   * @return The number, treated as unsigned
+   */
+  private long getVarint() {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte next = in.get();
+      value |= (long) (next & 0x7F) << shift;
+      if (next >= 0) {
+        return value;
+      }
+    }
+  }
+
+  /**
+   * This reads a string written as its length then its UTF-8 bytes.
+   *
+   * @return The string
+   */
+  private String getString() {
+    byte[] bytes = new byte[(int) getVarint()];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * This undoes the zigzag encoding of a signed number.
+   *
+   * @param value The zigzag encoded number
+   * @return Signed number
+   */
+  static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
@@ -0,0 +1,88 @@
+package barebones;
+
+import java.util.Map;
+
+/**
+ * This stores the outcome of a run: whether it finished or was stopped by a limit, the steps it
+ * was charged, and the variables when it ended. A run which was stopped keeps the variables it had
+ * reached, so they can still be inspected.
+ */
+public final class Result {
+  /**
+   * This lists the ways a run can end without an error.
+   */
+  public enum Status {
+    FINISHED, //Ran to the end of the program
+    STEP_LIMIT, //Stopped after the most steps allowed
+    TIME_LIMIT //Stopped after the most time allowed
+  }
+
+  private final Status status;
+  private final long steps;
+  private final Map<String, Number> variables;
+
+  /**
+   * This creates the outcome of a run.
+   *
+   * @param status    How the run ended
+   * @param steps     Steps charged at loop back edges
+   * @param variables Dictionary of variables when the run ended, in the order they were created
+   */
+  Result(Status status, long steps, Map<String, Number> variables) {
+    this.status = status;
+    this.steps = steps;
+    this.variables = variables;
+  }
+
+  /**
+   * This gets how the run ended.
+   *
+   * @return The status
+   */
+  public Status status() {
+    return status;
+  }
+
+  /**
+   * This checks if the run reached the end of the program.
+   *
+   * @return True if it was not stopped by a limit
+   */
+  public boolean finished() {
+    return status == Status.FINISHED;
+  }
+
+  /**
+   * This gets the steps charged. Only back edges are charged, each for the instructions in its
+   * loop, so this is zero without limits and approximate with them.
+   *
+   * @return Steps charged
+   */
+  public long steps() {
+    return steps;
+  }
+
+  /**
+   * This gets the variables when the run ended.
+   *
+   * @return Dictionary of variables, in the order they were created
+   */
+  public Map<String, Number> variables() {
+    return variables;
+  }
+
+  /**
+   * This describes why a run was stopped.
+   *
+   * @param status How the run ended
+   * @param steps  Steps charged
+   * @return The message, or null if the run finished
+   */
+  static String message(Status status, long steps) {
+    return switch (status) {
+      case FINISHED -> null;
+      case STEP_LIMIT -> "Step limit reached after " + steps + " steps";
+      case TIME_LIMIT -> "Time limit reached after " + steps + " steps";
+    };
+  }
+}
@@ -0,0 +1,95 @@
+package barebones;
+
+/**
+ * This does arithmetic on every element of an array one element at a time. It is used when the
+ * Vector API is not available, and for what is left over after the last whole vector.
+ */
+final class ScalarBulk implements Bulk {
+  @Override
+  public boolean add(long[] values, int base, int length, long value, boolean wrap) {
+    boolean overflowed = false;
+    for (int i = base; i < base + length; i++) {
+      long result = values[i] + value;
+      if (wrap) {
+        result = (int) result;
+      } else {
+        overflowed |= ((values[i] ^ result) & (value ^ result)) < 0;
+      }
+      values[i] = result;
+    }
+    return overflowed;
+  }
+
+  @Override
+  public boolean subtract(long[] values, int base, int length, long value, boolean wrap) {
+    boolean overflowed = false;
+    for (int i = base; i < base + length; i++) {
+      long result = values[i] - value;
+      if (wrap) {
+        result = (int) result;
+      } else {
+        overflowed |= ((values[i] ^ value) & (values[i] ^ result)) < 0;
+      }
+      values[i] = result;
+    }
+    return overflowed;
+  }
+
+  @Override
+  public boolean multiply(long[] values, int base, int length, long value, boolean wrap) {
+    boolean overflowed = false;
+    for (int i = base; i < base + length; i++) {
+      long result = values[i] * value;
+      if (wrap) {
+        result = (int) result;
+      } else {
+        overflowed |= Math.multiplyHigh(values[i], value) != (result >> 63);
+      }
+      values[i] = result;
+    }
+    return overflowed;
+  }
+
+  @Override
+  public boolean addArray(long[] values, int base, int other, int length, boolean wrap) {
+    boolean overflowed = false;
+    for (int i = 0; i < length; i++) {
+      long value = values[other + i];
+      long result = values[base + i] + value;
+      if (wrap) {
+        result = (int) result;
+      } else {
+        overflowed |= ((values[base + i] ^ result) & (value ^ result)) < 0;
+      }
+      values[base + i] = result;
+    }
+    return overflowed;
+  }
+
+  @Override
+  public boolean subtractArray(long[] values, int base, int other, int length, boolean wrap) {
+    boolean overflowed = false;
+    for (int i = 0; i < length; i++) {
+      long value = values[other + i];
+      long result = values[base + i] - value;
+      if (wrap) {
+        result = (int) result;
+      } else {
+        overflowed |= ((values[base + i] ^ value) & (values[base + i] ^ result)) < 0;
+      }
+      values[base + i] = result;
+    }
+    return overflowed;
+  }
+
+  @Override
+  public int count(long[] values, int base, int length, Comparison comparison, long value) {
+    int count = 0;
+    for (int i = base; i < base + length; i++) {
+      if (comparison.test(values[i], value)) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,263 @@
+package barebones;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This keeps the interpreter running as a server, so programs can be run without starting a JVM
+ * for each one. It listens on a TCP port on the loopback address, or on a Unix domain socket.
+ *
+ * <p>Each message, in either direction, is a 4 byte big endian length followed by that many bytes
+ * of UTF-8. A request is a program, which may start with lines of options for that job:
+ * --engine, --tier-threshold, --numbers, --max-steps, --time-limit, --parallel and --no-optimise.
+ * Limits given to the server are the most a job can have, so a job can lower them but not raise
+ * them. Each request on a connection is numbered from 1, and is answered with a line of JSON in
+ * the same form as the batch mode, with the job number in place of the file. Jobs run at the same
+ * time, so answers are sent as each finishes, which may not be the order they were sent in.
+ *
+ * <p>Connections and jobs run on virtual threads when the JVM has them, and otherwise on a pool
+ * of daemon threads. Jobs share the cores, and the limits stop any job which would take over.
+ * Compiled programs are kept between requests, so a program sent again is not compiled again.
+ */
+public final class Server {
+  static final int MAX_MESSAGE = 16 << 20; //Largest request accepted, in bytes
+  private static final int KEPT = 256; //Compiled programs kept between requests
+
+  private final String[] defaults; //Options given to the server, which every job starts with
+  private final Options limits; //Options given to the server, whose limits every job is held to
+  private final ExecutorService workers;
+  private final Map<String, Program> programs; //Compiled programs, least recently used first
+
+  /**
+   * This creates a server.
+   *
+   * @param defaults Interpreter options used for every job
+   * @param workers  Runs connections and jobs
+   * @throws IllegalArgumentException An option is not valid
+   */
+  Server(String[] defaults, ExecutorService workers) {
+    this.defaults = defaults;
+    this.limits = Options.parse(defaults);
+    this.workers = workers;
+    programs = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Program> eldest) {
+        return size() > KEPT;
+      }
+    });
+  }
+
+  /**
+   * This is used to get commandline inputs and start the server.
+   *
+   * @param args --port=N to listen on a TCP port, or --socket=PATH to listen on a Unix domain
+   *             socket, and any of the interpreter's options, used for every job
+   */
+  public static void main(String[] args) {
+    Integer port = null;
+    Path socket = null;
+    List<String> rest = new ArrayList<>();
+
+    try {
+      for (String arg : args) {
+        if (arg.matches("^--port=[0-9]{1,5}$")) {
+          port = Integer.parseInt(arg.substring("--port=".length()));
+        } else if (arg.matches("^--socket=.+$")) {
+          socket = Paths.get(arg.substring("--socket=".length()));
+        } else {
+          rest.add(arg);
+        }
+      }
+      if ((port == null) == (socket == null)) {
+        throw new IllegalArgumentException("Usage: java barebones.Server (--port=N | --socket=PATH) [options]");
+      }
+      Server server = new Server(rest.toArray(new String[0]), workers());
+
+      ServerSocketChannel channel;
+      if (port != null) {
+        channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      } else {
+        Files.deleteIfExists(socket);
+        channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(socket));
+        socket.toFile().deleteOnExit();
+      }
+      System.out.println("Listening on " + channel.getLocalAddress());
+      server.serve(channel);
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.exit(1);
+    } catch (IOException e) {
+      System.out.println("Unable to listen: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * This makes the threads jobs run on. Virtual threads are made through reflection, so the server
+   * still builds and runs on a JVM without them.
+   *
+   * @return A virtual thread for each task, or a pool of daemon threads
+   */
+  static ExecutorService workers() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      //Connections spend most of their time waiting, so they do not count against the cores
+      return Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "server-worker");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * This accepts connections until the server is stopped.
+   *
+   * @param channel Channel to accept connections from
+   * @throws IOException Accepting a connection gone wrong
+   */
+  void serve(ServerSocketChannel channel) throws IOException {
+    try (channel) {
+      while (true) {
+        SocketChannel connection = channel.accept();
+        workers.execute(() -> connection(connection));
+      }
+    }
+  }
+
+  /**
+   * This reads the requests on a connection, starting a job for each one, until the other end
+   * stops sending. The connection is closed once every job has been answered.
+   *
+   * @param channel Connection to serve
+   */
+  void connection(SocketChannel channel) {
+    try (channel) {
+      //Streams from Channels lock reading and writing together, so the channel is read directly
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new InputStream() {
+        @Override
+        public int read() throws IOException {
+          byte[] next = new byte[1];
+          return read(next, 0, 1) == -1 ? -1 : next[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+          return channel.read(ByteBuffer.wrap(bytes, offset, length));
+        }
+      }));
+      List<Future<?>> jobs = new ArrayList<>();
+
+      for (long job = 1; ; job++) {
+        int length;
+        try {
+          length = in.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        if (length < 0 || length > MAX_MESSAGE) {
+          send(channel, "{\"job\":" + job + ",\"status\":\"invalid\",\"error\":"
+              + Batch.quote("Invalid Message: " + length + " bytes") + "}");
+          break;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        long number = job;
+        jobs.add(workers.submit(() -> {
+          String reply;
+          try {
+            reply = Batch.result("job", String.valueOf(number), () -> compile(new String(bytes, StandardCharsets.UTF_8)));
+          } catch (RuntimeException | Error e) {
+            //Every job is answered, so the client never waits for a reply which will not come
+            reply = "{\"job\":" + number + ",\"status\":\"error\",\"error\":"
+                + Batch.quote(String.valueOf(e.getMessage())) + "}";
+          }
+          send(channel, reply);
+          return null;
+        }));
+        jobs.removeIf(Future::isDone);
+      }
+
+      for (Future<?> job : jobs) {
+        job.get();
+      }
+    } catch (IOException | ExecutionException e) {
+      //Other end has gone, so its answers are dropped
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * This writes a message, which may be sent by several jobs at once.
+   *
+   * @param channel Connection to write to
+   * @param text    Message to send
+   * @throws IOException Writing gone wrong
+   */
+  static void send(SocketChannel channel, String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer message = ByteBuffer.allocate(4 + bytes.length).putInt(bytes.length).put(bytes).flip();
+    synchronized (channel) {
+      while (message.hasRemaining()) {
+        channel.write(message);
+      }
+    }
+  }
+
+  /**
+   * This compiles a request, or gets it from the programs kept if it has been sent before.
+   *
+   * @param request Options for the job, one on each line, followed by the program
+   * @return The compiled program
+   * @throws IllegalArgumentException An option or the program is not valid
+   */
+  Program compile(String request) {
+    List<String> lines = Arrays.asList(request.split("\\R"));
+    List<String> args = new ArrayList<>(Arrays.asList(defaults));
+    int start = 0;
+    while (start < lines.size() && lines.get(start).startsWith("--")) {
+      String arg = lines.get(start).trim();
+      if (!arg.matches("^--(engine|tier-threshold|numbers|max-steps|time-limit)=.*$") && !arg.matches("^--(parallel|no-optimise)$")) {
+        throw new IllegalArgumentException("Invalid Argument: " + arg);
+      }
+      args.add(arg);
+      start++;
+    }
+    List<String> source = lines.subList(start, lines.size());
+
+    //Later options replace earlier ones, but the server's limits can only be lowered
+    Options options = Options.parse(args.toArray(new String[0]));
+    if (limits.maxSteps > 0 && (options.maxSteps == 0 || options.maxSteps > limits.maxSteps)) {
+      options.maxSteps = limits.maxSteps;
+    }
+    if (limits.timeLimit > 0 && (options.timeLimit == 0 || options.timeLimit > limits.timeLimit)) {
+      options.timeLimit = limits.timeLimit;
+    }
+
+    String key = ProgramCache.key(source, options) + " " + options.engine + " " + options.tierThreshold
+        + " " + options.maxSteps + " " + options.timeLimit + " " + options.parallel;
+    Program program = programs.get(key);
+    if (program == null) {
+      program = Program.compile(source, options);
+      programs.put(key, program);
+    }
+    return program;
+  }
+}
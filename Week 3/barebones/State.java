@@ -0,0 +1,247 @@
+package barebones;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This stores the variables of one run of a program.
+ * Values are kept in a primitive register file indexed by slot, so running a program does not
+ * hash names or box values.
+ *
+ * <p>A variable only exists once an instruction using it has run, so the order variables are
+ * created in is also kept. This means the variables can be output exactly as before.
+ *
+ * <p>In the big numeric mode, a variable whose value is too large for a long is kept in a second
+ * register file of BigIntegers instead.
+ *
+ * <p>Calls to subroutines which were not inlined push the address to return to onto a call stack,
+ * which grows as needed up to {@link #CALLS} calls.
+ */
+public final class State {
+  static final int CALLS = 1 << 20; //Most calls which can be running at once
+
+  final Program program; //Program the variables belong to
+  final long[] values; //Value of the variable in each slot
+  final BigInteger[] big; //Value of each slot too large for a long, only in the big numeric mode
+  final boolean[] defined; //True for each slot whose variable exists
+  final int[] order; //Slots in the order their variables were created
+  int count; //Number of variables which exist
+  long dispatched; //Instructions dispatched by the interpreter, when counting
+  long removed; //Dispatches saved by instructions which replaced others, when counting
+  long backEdges; //Loop back edges taken by the interpreter, when counting
+  boolean counted; //True to count dispatches and back edges, for the report or the run's events
+  long charged; //Steps charged at loop back edges, when there are limits
+  private long limit = Long.MAX_VALUE; //Most steps which can be charged
+  private long deadline; //Time the run must stop by, from System.nanoTime
+  private boolean timed; //True if there is a deadline
+  private long every; //Time between checkpoints in nanoseconds, or 0 for no checkpoints
+  private long due; //Time the next checkpoint is due, from System.nanoTime
+  private int checks; //Back edges since the clock was last read
+  private final AtomicInteger failed; //First region of the same run to stop with an error so far, or null
+  private final int region; //Region of the run these variables belong to, or -1
+  Result.Status stopped; //Why the run was stopped early, or null
+  int yielded = -1; //Address compiled code left at for a checkpoint, or -1
+  int[] calls = new int[0]; //Address each running call returns to, innermost last
+  int depth; //Number of calls running
+
+  /**
+   * This creates the variables for a run of a program, none of which exist yet.
+   *
+   * @param program Program the variables belong to
+   */
+  public State(Program program) {
+    this.program = program;
+    int size = program.names.length;
+    values = new long[size];
+    big = program.numbers == Numbers.BIG ? new BigInteger[size] : null;
+    defined = new boolean[size];
+    order = new int[size];
+    failed = null;
+    region = -1;
+  }
+
+  /**
+   * This creates the variables for a region of a run, which shares the run's register file but
+   * keeps its own order of creating variables, as used by {@link Regions}.
+   *
+   * @param run    Variables of the whole run
+   * @param failed First region of the run to stop with an error so far, which stops this one if it
+   *               is earlier
+   * @param region Region of the run these variables belong to
+   */
+  State(State run, AtomicInteger failed, int region) {
+    program = run.program;
+    values = run.values;
+    big = run.big;
+    defined = new boolean[values.length];
+    order = new int[values.length];
+    counted = run.counted;
+    this.failed = failed;
+    this.region = region;
+  }
+
+  /**
+   * This is used to create the variables used by an instruction, if they do not already exist.
+   *
+   * @param instruction Instruction whose variables are being used
+   */
+  void define(Instruction instruction) {
+    define(instruction.aSlot);
+    define(instruction.bSlot);
+  }
+
+  /**
+   * This is used to create a variable if it does not already exist. Creating any element of an
+   * array creates all of its elements, in order.
+   *
+   * @param slot Slot of the variable, or -1 for a literal
+   */
+  void define(int slot) {
+    if (slot != -1 && !defined[slot]) {
+      int[] arrays = program.arrays;
+      if (arrays[slot] == -1) {
+        defined[slot] = true;
+        order[count++] = slot;
+        return;
+      }
+      for (int element = arrays[slot]; element < arrays.length && arrays[element] == arrays[slot]; element++) {
+        if (!defined[element]) {
+          defined[element] = true;
+          order[count++] = element;
+        }
+      }
+    }
+  }
+
+  /**
+   * This sets the limits and checkpoints of a run, starting the clock.
+   *
+   * @param steps      Most steps which can be charged, or 0 for no limit
+   * @param millis     Most time the run can take in milliseconds, or 0 for no limit
+   * @param checkpoint Milliseconds between checkpoints, or 0 for no checkpoints
+   */
+  void limit(long steps, long millis, long checkpoint) {
+    long now = System.nanoTime();
+    charged = 0;
+    limit = steps > 0 ? steps : Long.MAX_VALUE;
+    timed = millis > 0;
+    deadline = now + millis * 1_000_000;
+    every = checkpoint * 1_000_000;
+    due = now + every;
+    checks = 0;
+    stopped = null;
+    yielded = -1;
+  }
+
+  /**
+   * This charges a loop back edge against the limits, and checks if a checkpoint is due. It is used
+   * by the interpreter and compiled code, which leave the loop if it returns true. Then either
+   * stopped is set, or yielded is set to where the run carries on from after the checkpoint. The
+   * clock, and whether an earlier region of the run has stopped with an error, are only checked
+   * every 1024 back edges.
+   *
+   * @param weight  Instructions in the loop
+   * @param address Address of the start of the loop body
+   * @return True if a limit has been reached or a checkpoint is due
+   * @throws CancellationException An earlier region of the run stopped with an error
+   */
+  boolean tick(int weight, int address) {
+    charged += weight;
+    if (charged > limit) {
+      stopped = Result.Status.STEP_LIMIT;
+      return true;
+    }
+    if ((timed || every > 0 || failed != null) && (++checks & 1023) == 0) {
+      if (failed != null && failed.get() < region) {
+        throw new CancellationException("Stopped by an error in an earlier region");
+      }
+      long now = System.nanoTime();
+      if (timed && now - deadline > 0) {
+        stopped = Result.Status.TIME_LIMIT;
+        return true;
+      }
+      if (every > 0 && now - due > 0) {
+        due = now + every;
+        yielded = address;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * This pushes the address a call returns to onto the call stack.
+   *
+   * @param address     Address after the call
+   * @param instruction Call instruction
+   * @throws CallDepthException Too many calls are running, such as from recursion which never ends
+   */
+  void call(int address, Instruction instruction) {
+    if (depth == calls.length) {
+      if (depth == CALLS) {
+        throw new CallDepthException(CALLS, instruction.line);
+      }
+      calls = Arrays.copyOf(calls, Math.max(16, depth * 2));
+    }
+    calls[depth++] = address;
+  }
+
+  /**
+   * This pops the address the innermost call goes back to.
+   *
+   * @return Address after the call
+   */
+  int back() {
+    return calls[--depth];
+  }
+
+  /**
+   * This runs a summarised loop. It is used by compiled code, which stores its variables back into
+   * the register file before calling it.
+   *
+   * @param address Address of the loop instruction
+   */
+  void loop(int address) {
+    Instruction instruction = program.instructions[address];
+    instruction.summary.apply(instruction, this);
+  }
+
+  /**
+   * This runs an array instruction. It is used by compiled code, which stores the variables it
+   * uses back into the register file before calling it.
+   *
+   * @param address Address of the array instruction
+   */
+  void array(int address) {
+    Instruction instruction = program.instructions[address];
+    instruction.array.apply(instruction, this);
+  }
+
+  /**
+   * This gets the value of a variable.
+   *
+   * @param slot Slot of the variable
+   * @return The value, which is a BigInteger if it is too large for a long
+   */
+  Number value(int slot) {
+    return big != null && big[slot] != null ? big[slot] : Long.valueOf(values[slot]);
+  }
+
+  /**
+   * This will map the name of each variable which exists to its value, for outputting them.
+   * Like the original interpreter it uses a HashMap, so they are output in the same order as
+   * before, which is not the order they were created in.
+   *
+   * @param program Program the variables belong to
+   * @return Dictionary of variables
+   */
+  public Map<String, Number> variables(Program program) {
+    Map<String, Number> variables = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      variables.put(program.names[order[i]], value(order[i]));
+    }
+    return variables;
+  }
+}
@@ -0,0 +1,265 @@
+package barebones;
+
+import java.util.*;
+
+/**
+ * This expands the calls in a program, once the parser has read every subroutine.
+ *
+ * <p>Parameters are passed by reference: inside a subroutine each parameter is another name for the
+ * variable given in the call, and every other variable is the program's own. A subroutine which
+ * never calls itself, directly or through others, and is no more than {@link #INLINE} instructions
+ * is inlined, with each parameter renamed to the variable passed, so it runs exactly as if its body
+ * had been pasted in and is optimised the same way.
+ *
+ * <p>Every other call runs a copy of the body with its parameters renamed in the same way. Copies
+ * are placed after the main program, which like each copy ends with a return, and calls passing the
+ * same variables share a copy. A recursive subroutine then only needs a copy for each way it passes
+ * its parameters on, and a call only has to push where to return to onto the call stack.
+ *
+ * <p>Binding parameters to variables when the program is compiled, rather than through a frame
+ * when it runs, means every instruction of a copy uses fixed slots. So copies are optimised, their
+ * loops summarised and compiled by the tiered engine, exactly like the main program. The cost is
+ * that a subroutine called with several different sets of variables is held once for each set, as
+ * if it had been pasted in, so copies can only make a program at most {@link #GROWTH} times larger
+ * than the instructions it was written with.
+ */
+final class Subroutines {
+  static final int INLINE = 32; //Most instructions in a subroutine which is inlined
+  static final int GROWTH = 64; //Most times the written instructions copies can add to a program
+
+  private final Map<String, Subroutine> subroutines = new LinkedHashMap<>(); //Every subroutine, by name
+  private Subroutine last; //Subroutine defined last
+  private final Map<String, Integer> copies = new HashMap<>(); //Number of each copy, by call
+  private final List<Subroutine> called = new ArrayList<>(); //Subroutine of each copy, in order
+  private final List<Map<String, String>> passed = new ArrayList<>(); //Variables passed to each copy
+  private final List<Instruction> callers = new ArrayList<>(); //First call to each copy
+
+  /**
+   * This stores a subroutine as it was parsed.
+   */
+  private static final class Subroutine {
+    final String[] parameters; //Names of its parameters
+    final int line; //Line number of its def
+    final List<Instruction> body = new ArrayList<>(); //Parsed instructions, with calls not expanded
+    int end; //Line number of its enddef
+    Boolean recursive; //True if it can call itself, or null if not yet worked out
+    int size = -1; //Instructions once inlined, or -1 if not yet worked out
+
+    Subroutine(String[] parameters, int line) {
+      this.parameters = parameters;
+      this.line = line;
+    }
+  }
+
+  /**
+   * This starts a new subroutine.
+   *
+   * @param text       Line defining the subroutine
+   * @param name       Name of the subroutine
+   * @param parameters Names of its parameters
+   * @param line       Line number of the def
+   * @return List to add the instructions of its body to
+   * @throws IllegalArgumentException The name is already used, or a parameter is repeated
+   */
+  List<Instruction> define(String text, String name, String[] parameters, int line) {
+    if (subroutines.containsKey(name)) {
+      throw error(text, line, "has the same name as the subroutine on line " + subroutines.get(name).line);
+    }
+    if (new HashSet<>(List.of(parameters)).size() != parameters.length) {
+      throw error(text, line, "has a parameter more than once");
+    }
+    last = new Subroutine(parameters, line);
+    subroutines.put(name, last);
+    return last.body;
+  }
+
+  /**
+   * This finishes the subroutine being defined.
+   *
+   * @param line Line number of the enddef
+   */
+  void end(int line) {
+    last.end = line;
+  }
+
+  /**
+   * This expands every call in a program, inlining the subroutines which can be and adding a copy
+   * of the others after the main program.
+   *
+   * @param main  Parsed instructions of the main program
+   * @param lines Number of lines in the program
+   * @return This will return the expanded program, which is not linked
+   * @throws IllegalArgumentException A call is to a subroutine which does not exist, or passes the
+   *                                  wrong number of variables, or copies would make the program
+   *                                  too large
+   */
+  Instruction[] expand(List<Instruction> main, int lines) {
+    //Every call is checked, even in subroutines which are never called
+    check(main);
+    int written = main.size();
+    for (Subroutine subroutine : subroutines.values()) {
+      check(subroutine.body);
+      written += subroutine.body.size();
+    }
+
+    List<Instruction> expanded = new ArrayList<>(main.size());
+    expand(main, Map.of(), expanded);
+    if (!called.isEmpty()) {
+      //Copies are added in the order they are first called, so the list can grow while it is read
+      long most = expanded.size() + (long) GROWTH * written;
+      expanded.add(new Instruction(Opcode.RETURN, null, 0, null, 0, null, lines));
+      for (int i = 0; i < called.size(); i++) {
+        expand(called.get(i).body, passed.get(i), expanded);
+        expanded.add(new Instruction(Opcode.RETURN, null, 0, null, 0, null, called.get(i).end));
+        if (expanded.size() > most) {
+          Instruction caller = callers.get(i);
+          throw error(caller.toString(), caller.line, "needs copies of subroutines more than " + GROWTH
+              + " times the size of the program, one for each set of variables passed");
+        }
+      }
+    }
+    return expanded.toArray(new Instruction[0]);
+  }
+
+  /**
+   * This checks each call in a list of instructions is to a subroutine which exists, passing a
+   * variable for each of its parameters.
+   *
+   * @param instructions Parsed instructions
+   * @throws IllegalArgumentException A call is not valid
+   */
+  private void check(List<Instruction> instructions) {
+    for (Instruction instruction : instructions) {
+      if (instruction.opcode == Opcode.CALL) {
+        Subroutine subroutine = subroutines.get(instruction.arguments[0]);
+        if (subroutine == null) {
+          throw error(instruction.toString(), instruction.line, "calls a subroutine which does not exist");
+        }
+        if (subroutine.parameters.length != instruction.arguments.length - 1) {
+          throw error(instruction.toString(), instruction.line, "does not pass one variable for each of the "
+              + subroutine.parameters.length + " parameters of " + instruction.arguments[0]);
+        }
+      }
+    }
+  }
+
+  /**
+   * This adds the instructions of the main program or a subroutine, with its parameters renamed to
+   * the variables passed and its calls expanded.
+   *
+   * @param body     Parsed instructions
+   * @param renaming Variable passed for each parameter, by name
+   * @param expanded Used to store the expanded instructions
+   */
+  private void expand(List<Instruction> body, Map<String, String> renaming, List<Instruction> expanded) {
+    for (Instruction instruction : body) {
+      if (instruction.opcode != Opcode.CALL) {
+        expanded.add(renaming.isEmpty() ? instruction : new Instruction(instruction.opcode,
+            rename(instruction.a, renaming), instruction.aValue, rename(instruction.b, renaming),
+            instruction.bValue, instruction.operator,
+            instruction.array != null ? instruction.array.rename(renaming) : null, instruction.line));
+        continue;
+      }
+
+      String[] arguments = instruction.arguments.clone();
+      Subroutine subroutine = subroutines.get(arguments[0]);
+      Map<String, String> variables = new HashMap<>();
+      for (int i = 1; i < arguments.length; i++) {
+        arguments[i] = rename(arguments[i], renaming);
+        variables.put(subroutine.parameters[i - 1], arguments[i]);
+      }
+
+      if (inlined(subroutine)) {
+        expand(subroutine.body, variables, expanded);
+      } else {
+        String key = String.join(" ", arguments);
+        Integer copy = copies.get(key);
+        if (copy == null) {
+          copy = copies.size() + 1;
+          copies.put(key, copy);
+          called.add(subroutine);
+          passed.add(variables);
+          callers.add(instruction);
+        }
+        expanded.add(new Instruction(arguments, copy, instruction.line));
+      }
+    }
+  }
+
+  /**
+   * This checks if a subroutine is inlined, which it is if it is small and never calls itself.
+   *
+   * @param subroutine Subroutine to check
+   * @return True if each call is replaced by its body
+   */
+  private boolean inlined(Subroutine subroutine) {
+    return !recursive(subroutine) && size(subroutine) <= INLINE;
+  }
+
+  /**
+   * This checks if a subroutine can call itself, directly or through other subroutines.
+   *
+   * @param subroutine Subroutine to check
+   * @return True if it is recursive
+   */
+  private boolean recursive(Subroutine subroutine) {
+    if (subroutine.recursive == null) {
+      Set<Subroutine> reached = new HashSet<>();
+      Deque<Subroutine> pending = new ArrayDeque<>(List.of(subroutine));
+      while (!pending.isEmpty()) {
+        for (Instruction instruction : pending.pop().body) {
+          if (instruction.opcode == Opcode.CALL) {
+            Subroutine callee = subroutines.get(instruction.arguments[0]);
+            if (reached.add(callee)) {
+              pending.push(callee);
+            }
+          }
+        }
+      }
+      subroutine.recursive = reached.contains(subroutine);
+    }
+    return subroutine.recursive;
+  }
+
+  /**
+   * This works out how many instructions a subroutine which is not recursive has once the
+   * subroutines it calls are inlined.
+   *
+   * @param subroutine Subroutine which is not recursive
+   * @return Number of instructions
+   */
+  private int size(Subroutine subroutine) {
+    if (subroutine.size == -1) {
+      int size = 0;
+      for (Instruction instruction : subroutine.body) {
+        Subroutine callee = instruction.opcode == Opcode.CALL ? subroutines.get(instruction.arguments[0]) : null;
+        size += callee != null && inlined(callee) ? callee.size : 1;
+      }
+      subroutine.size = size;
+    }
+    return subroutine.size;
+  }
+
+  /**
+   * This gets the variable a name refers to inside a subroutine.
+   *
+   * @param name     Name used, or null for a literal
+   * @param renaming Variable passed for each parameter, by name
+   * @return The variable passed if the name is a parameter, otherwise the name
+   */
+  private static String rename(String name, Map<String, String> renaming) {
+    return name == null ? null : renaming.getOrDefault(name, name);
+  }
+
+  /**
+   * This creates the error for a def, enddef or call in the wrong place.
+   *
+   * @param text    Line of code
+   * @param line    Line number in the source file
+   * @param problem What is wrong with it
+   * @return The error to throw
+   */
+  static IllegalArgumentException error(String text, int line, String problem) {
+    return new IllegalArgumentException("Invalid Structure: '" + text + "' on line " + line + " " + problem);
+  }
+}
@@ -0,0 +1,66 @@
+package barebones;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This is used by the tiered engine to decide when to compile a loop.
+ * Programs start in the interpreter, which counts the back edges of each while loop. Once a loop
+ * has gone round more times than the threshold it is compiled by the {@link BytecodeEngine}, and
+ * the rest of the loop runs as compiled code using the same register file.
+ *
+ * <p>Compiled loops are kept for every run of the program, while the counts belong to each run.
+ * Runs on different threads can share compiled loops, and if two compile the same loop at once
+ * either copy can be kept.
+ */
+final class Tiering {
+  static final int THRESHOLD = 1000; //Default number of back edges before a loop is compiled
+
+  private final Program program;
+  private final int threshold;
+  private final boolean checked; //True if compiled loops check the limits and checkpoints
+  private final AtomicReferenceArray<MethodHandle> loops; //Compiled loop starting at each address, if there is one
+
+  /**
+   * This creates the counters for a program.
+   *
+   * @param program   Program being run
+   * @param threshold Back edges before a loop is compiled
+   * @param checked   True if compiled loops must check the limits and checkpoints
+   */
+  Tiering(Program program, int threshold, boolean checked) {
+    this.program = program;
+    this.threshold = Math.max(threshold, 1);
+    this.checked = checked;
+    loops = new AtomicReferenceArray<>(program.instructions.length);
+  }
+
+  /**
+   * This gets the compiled form of a loop, if it has been compiled.
+   *
+   * @param address Address of the while
+   * @return The compiled loop, or null if it is still interpreted
+   */
+  MethodHandle loop(int address) {
+    return loops.get(address);
+  }
+
+  /**
+   * This counts a back edge of a loop, and compiles the loop once it is hot.
+   *
+   * @param counts  Back edges taken by the loop starting at each address in this run
+   * @param address Address of the while
+   * @return The compiled loop, or null if it is still interpreted
+   */
+  MethodHandle backEdge(int[] counts, int address) {
+    if (++counts[address] == threshold && loops.get(address) == null) {
+      try {
+        int end = program.instructions[address].jump;
+        loops.compareAndSet(address, null, BytecodeEngine.compile(program, address, end, checked));
+      } catch (IllegalStateException e) {
+        //Too large to compile, so the loop stays interpreted
+      }
+    }
+    return loops.get(address);
+  }
+}
@@ -0,0 +1,91 @@
+package barebones;
+
+import java.io.PrintStream;
+
+/**
+ * This records the last steps of a program in a ring buffer, so a run can be traced without
+ * printing after every instruction.
+ *
+ * <p>Each step is stored as the address of the instruction, its opcode, the slot it changed and the
+ * new value, in preallocated arrays which are written over once they are full. Recording a step
+ * does not allocate, and when a program is not traced no tracer is made, so it costs nothing.
+ * The steps kept can be dumped at any time, such as after an error.
+ */
+public final class Tracer implements Executor.Listener {
+  static final int CAPACITY = 64; //Default number of steps kept
+
+  private final Program program;
+  private final int[] addresses; //Address of the instruction run at each step
+  private final byte[] opcodes; //Opcode of the instruction run at each step
+  private final int[] slots; //Slot changed at each step, or -1 if none was
+  private final long[] values; //Value of the changed slot after each step
+  private int next; //Index the next step is written to
+  private long steps; //Number of steps recorded, including those written over
+
+  /**
+   * This creates a tracer for a program.
+   *
+   * @param program  Program being traced
+   * @param capacity Number of steps kept, at least 1
+   */
+  public Tracer(Program program, int capacity) {
+    this.program = program;
+    capacity = Math.max(capacity, 1);
+    addresses = new int[capacity];
+    opcodes = new byte[capacity];
+    slots = new int[capacity];
+    values = new long[capacity];
+  }
+
+  @Override
+  public void step(int address, int programCounter, Instruction instruction, State state) {
+    int index = next;
+    next = index + 1 == addresses.length ? 0 : index + 1;
+    steps++;
+    int slot = switch (instruction.opcode) {
+      case CLEAR, INCR, DECR, MULT, DIV, MOD, SET, DECR_END, LOOP, COUNT, LOAD -> instruction.aSlot;
+      default -> -1;
+    };
+    addresses[index] = address;
+    opcodes[index] = (byte) instruction.opcode.ordinal();
+    slots[index] = slot;
+    values[index] = slot == -1 ? 0 : state.values[slot];
+  }
+
+  /**
+   * This gets the number of steps recorded, including those no longer kept.
+   *
+   * @return Steps recorded
+   */
+  public long steps() {
+    return steps;
+  }
+
+  /**
+   * This writes the steps kept, oldest first, with the line each instruction came from.
+   * Summarised loops show the loop counter, and variables too large for a long show the low 64
+   * bits of their value.
+   *
+   * @param out Used to write the steps
+   */
+  public void dump(PrintStream out) {
+    Opcode[] opcodeValues = Opcode.values();
+    long kept = Math.min(steps, addresses.length);
+    out.println(" - - - - Trace (last " + kept + " of " + steps + " steps) - - - - ");
+
+    for (long step = steps - kept; step < steps; step++) {
+      int index = (int) (step % addresses.length);
+      Instruction instruction = program.instructions[addresses[index]];
+      StringBuilder line = new StringBuilder();
+      line.append('#').append(step + 1)
+          .append(" PC: ").append(addresses[index])
+          .append(" Line ").append(instruction.line)
+          .append(": ").append(opcodeValues[opcodes[index]])
+          .append(' ').append(instruction);
+      if (slots[index] != -1) {
+        line.append(" -> ").append(program.names[slots[index]]).append(" = ").append(values[index]);
+      }
+      out.println(line);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package barebones;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * This checks that a run carried on from a checkpoint ends with exactly the variables of a run
+ * which was never stopped. Checkpoints are taken every millisecond, and the last one a run leaves
+ * is resumed, as if the run had been killed after writing it.
+ */
+class CheckpointTest {
+  /**
+   * This runs for long enough to take several checkpoints, with an if in its loop so the loop is
+   * not replaced by its closed form, and an array so elements are saved too.
+   */
+  static final List<String> PROGRAM = """
+      array A 4;
+      clear X;
+      incr X 3000000;
+      while X not 0 do;
+        incr Y X;
+        mod Y 1000003;
+        if Y > 500000;
+          incr A[2] 1;
+        else;
+          incr Z 3;
+        endif;
+        decr X 1;
+      end;
+      """.lines().toList();
+
+  @TempDir
+  Path directory;
+
+  static Stream<String> options() {
+    return Stream.of("interpreter", "tiered").flatMap(engine -> Stream.of("int", "long", "big")
+        .map(numbers -> "--engine=" + engine + " --numbers=" + numbers));
+  }
+
+  @ParameterizedTest
+  @MethodSource("options")
+  void resumesWithTheSameVariables(String arguments) throws IOException {
+    Options options = Options.parse(arguments.split(" "));
+    Program program = Program.compile(PROGRAM, options);
+    Map<String, Number> expected = new Executor(program, options).run().variables(program);
+
+    Path file = directory.resolve("run.bbk");
+    Options checkpointed = Options.parse((arguments + " --checkpoint=" + file + " --checkpoint-every=1").split(" "));
+    assertEquals(expected, new Executor(program, checkpointed).run().variables(program));
+    assertTrue(Files.isRegularFile(file));
+
+    State state = new State(program);
+    int start = Checkpoint.restore(program, file, state);
+    assertTrue(start > 0);
+    new Executor(program, options).run(state, start);
+    assertEquals(expected, state.variables(program));
+  }
+
+  @Test
+  void rejectsAnotherProgram() throws IOException {
+    Options options = Options.parse(new String[]{"--checkpoint=" + directory.resolve("run.bbk"), "--checkpoint-every=1"});
+    Program program = Program.compile(PROGRAM, options);
+    new Executor(program, options).run();
+
+    Program other = Program.compile(PROGRAM, Options.parse(new String[]{"--numbers=long"}));
+    State state = new State(other);
+    assertThrows(IllegalArgumentException.class, () -> Checkpoint.restore(other, directory.resolve("run.bbk"), state));
+  }
+}
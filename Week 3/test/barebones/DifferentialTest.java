@@ -0,0 +1,108 @@
+package barebones;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * This runs a corpus of generated programs through every engine and numeric mode, with and
+ * without the optimiser and regions, and checks each ends with the variables the generator worked
+ * out without the interpreter. The same programs are then run with random inputs, which the
+ * generator cannot work out, and checked against the interpreter running them as written.
+ */
+class DifferentialTest {
+  private static final int PROGRAMS = 12;
+  private static final int INPUTS = 4; //Sets of random inputs each program is run with
+  private static final long SEED = 20240601;
+
+  private static final List<List<String>> sources = new ArrayList<>(); //Lines of each program
+  private static final List<String> expected = new ArrayList<>(); //Variables each ends with, as JSON
+
+  /**
+   * This writes the corpus, with loops nested three deep so the tiered engine has loops to compile.
+   *
+   * @param directory Directory the programs are written to
+   * @throws IOException Writing a program gone wrong
+   */
+  @BeforeAll
+  static void generate(@TempDir Path directory) throws IOException {
+    Generator generator = new Generator(300, 3, 12, 26, 20, 10);
+    for (int i = 0; i < PROGRAMS; i++) {
+      Path file = directory.resolve("program-" + i + ".txt");
+      expected.add(generator.write(file, SEED + i));
+      sources.add(Files.readAllLines(file));
+    }
+  }
+
+  /**
+   * This lists every combination of engine, numeric mode, optimisation and regions. The tiered
+   * engine compiles loops after two back edges, so the small loops of the corpus are compiled.
+   *
+   * @return The options for each combination
+   */
+  static Stream<String> options() {
+    List<String> options = new ArrayList<>();
+    for (String engine : List.of("--engine=interpreter", "--engine=bytecode", "--engine=tiered --tier-threshold=2")) {
+      for (String numbers : List.of("int", "long", "big")) {
+        for (String optimise : List.of("", " --no-optimise")) {
+          for (String parallel : List.of("", " --parallel")) {
+            options.add(engine + " --numbers=" + numbers + optimise + parallel);
+          }
+        }
+      }
+    }
+    return options.stream();
+  }
+
+  @ParameterizedTest
+  @MethodSource("options")
+  void endsWithGeneratedVariables(String arguments) {
+    Options options = Options.parse(arguments.split(" "));
+    for (int i = 0; i < PROGRAMS; i++) {
+      Program program = Program.compile(sources.get(i), options);
+      assertEquals(expected.get(i), Batch.json(program.run(Map.of())), "program " + i);
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("options")
+  void matchesInterpreterWithInputs(String arguments) {
+    Options options = Options.parse(arguments.split(" "));
+    Options reference = Options.parse(new String[]{"--numbers=" + options.numbers.name().toLowerCase(), "--no-optimise"});
+    Random random = new Random(SEED);
+    for (int i = 0; i < PROGRAMS; i++) {
+      Program program = Program.compile(sources.get(i), options);
+      Program written = Program.compile(sources.get(i), reference);
+      for (int j = 0; j < INPUTS; j++) {
+        Map<String, Long> inputs = inputs(written, random);
+        assertEquals(Batch.json(written.run(inputs)), Batch.json(program.run(inputs)), "program " + i + " with " + inputs);
+      }
+    }
+  }
+
+  /**
+   * This gives some of a program's variables random values, kept below the generator's largest
+   * mod so every value still fits in an int.
+   *
+   * @param program Program the inputs are for
+   * @param random  Used to pick the variables and values
+   * @return The inputs, in the order they are given
+   */
+  private static Map<String, Long> inputs(Program program, Random random) {
+    Map<String, Long> inputs = new LinkedHashMap<>();
+    for (String name : program.names) {
+      if (random.nextInt(3) == 0) {
+        inputs.put(name, (long) random.nextInt(1000000));
+      }
+    }
+    return inputs;
+  }
+}
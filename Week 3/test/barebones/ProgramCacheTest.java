@@ -0,0 +1,109 @@
+package barebones;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * This checks that a compiled program read back from the cache is the one which was written, by
+ * its hash and by running it, in every numeric mode and with and without the optimiser.
+ */
+class ProgramCacheTest {
+  /**
+   * This has arrays, an if, loops the optimiser summarises and a subroutine, so every kind of
+   * instruction and the loop summaries are written.
+   */
+  static final List<String> PROGRAM = """
+      array A 20;
+      array B 20;
+      clear I;
+      while I not 20 do;
+        incr A[I] I;
+        decr B[I] I;
+        incr B[I] 3;
+        incr I 1;
+      end;
+      incr A 5;
+      mult A 3;
+      incr A B;
+      count N A > 20;
+      clear X;
+      incr X 300;
+      while X not 0 do;
+        incr Y 2;
+        decr X 1;
+      end;
+      if N >= 10;
+        call swap X Y;
+      else;
+        clear Y;
+      endif;
+      def swap P Q;
+        clear T;
+        incr T P;
+        clear P;
+        incr P Q;
+        clear Q;
+        incr Q T;
+      enddef;
+      """.lines().toList();
+
+  @TempDir
+  Path directory;
+
+  static Stream<String> options() {
+    return Stream.of("--numbers=int", "--numbers=long", "--numbers=big",
+        "--numbers=int --no-optimise", "--numbers=long --no-optimise", "--numbers=big --no-optimise");
+  }
+
+  @ParameterizedTest
+  @MethodSource("options")
+  void readsWhatWasWritten(String arguments) throws IOException {
+    Options options = Options.parse(arguments.split(" "));
+    Program compiled = Program.compile(PROGRAM, options);
+    Path file = directory.resolve("program.bbc");
+    ProgramCache.write(file, compiled, options);
+
+    Program read = ProgramCache.read(file, options);
+    assertNotNull(read);
+    assertArrayEquals(Checkpoint.hash(compiled), Checkpoint.hash(read));
+    assertEquals(compiled.report, read.report);
+    assertEquals(Batch.json(compiled.run(Map.of("Y", 4L))), Batch.json(read.run(Map.of("Y", 4L))));
+  }
+
+  @Test
+  void ignoresOtherOptions() throws IOException {
+    Options options = Options.parse(new String[]{"--numbers=long"});
+    Path file = directory.resolve("program.bbc");
+    ProgramCache.write(file, Program.compile(PROGRAM, options), options);
+
+    assertNull(ProgramCache.read(file, Options.parse(new String[]{"--numbers=big"})));
+    assertNull(ProgramCache.read(file, Options.parse(new String[]{"--numbers=long", "--no-optimise"})));
+  }
+
+  @Test
+  void compilesOnceAndReplacesDamagedEntries() throws IOException {
+    Options options = Options.parse(new String[]{"--numbers=long", "--cache=" + directory});
+    Path file = directory.resolve(ProgramCache.key(PROGRAM, options) + ".bbc");
+    Program first = Program.compile(PROGRAM, options);
+    assertTrue(Files.isRegularFile(file));
+    byte[] written = Files.readAllBytes(file);
+
+    Program second = Program.compile(PROGRAM, options);
+    assertArrayEquals(Checkpoint.hash(first), Checkpoint.hash(second));
+
+    Files.write(file, new byte[]{1, 2, 3});
+    Program third = Program.compile(PROGRAM, options);
+    assertArrayEquals(Checkpoint.hash(first), Checkpoint.hash(third));
+    assertArrayEquals(written, Files.readAllBytes(file));
+  }
+}
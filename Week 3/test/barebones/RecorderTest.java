@@ -0,0 +1,114 @@
+package barebones;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * This checks that replaying a recording gives the variables the run had after every step, going
+ * forwards a step at a time and jumping back and forth between snapshots.
+ */
+class RecorderTest {
+  /**
+   * This runs for several snapshots, and changes elements chosen by a variable, whole arrays and
+   * variables inside loops the optimiser summarises, as well as creating variables as it goes.
+   */
+  static final List<String> PROGRAM = """
+      array A 8;
+      array B 8;
+      clear X;
+      incr X 3000;
+      while X not 0 do;
+        clear I;
+        incr I X;
+        mod I 8;
+        clear T;
+        incr T X;
+        mod T 1000;
+        incr A[I] T;
+        if T > 500;
+          decr B[I] 1;
+          incr Over 1;
+        endif;
+        decr X 1;
+      end;
+      incr A B;
+      mult B 2;
+      count N A > 400;
+      clear Y;
+      incr Y 50;
+      while Y not 0 do;
+        incr Total N;
+        decr Y 1;
+      end;
+      """.lines().toList();
+
+  @TempDir
+  Path directory;
+
+  static Stream<String> options() {
+    return Stream.of("--numbers=int", "--numbers=long", "--numbers=int --no-optimise", "--numbers=long --no-optimise");
+  }
+
+  @ParameterizedTest
+  @MethodSource("options")
+  void replaysEveryStep(String arguments) throws IOException {
+    Program program = Program.compile(PROGRAM, Options.parse(arguments.split(" ")));
+    Path file = directory.resolve("run.bbr");
+    List<Map<String, Long>> steps = new ArrayList<>();
+    Executor.Listener snapshots = new Executor.Listener() {
+      @Override
+      public void start(State state) {
+        steps.add(variables(state, program));
+      }
+
+      @Override
+      public void step(int address, int programCounter, Instruction instruction, State state) {
+        steps.add(variables(state, program));
+      }
+    };
+
+    Recorder recorder = new Recorder(program, file);
+    try {
+      program.run(Map.of("Over", 2L), Executor.Listener.both(recorder, snapshots));
+    } finally {
+      recorder.close();
+    }
+
+    Replay replay = new Replay(file);
+    assertEquals(steps.size() - 1, replay.steps());
+    assertEquals(steps.size() - 1, recorder.steps());
+    for (int step = 0; step < steps.size(); step++) {
+      replay.seek(step);
+      assertEquals(steps.get(step), replay.variables(), "step " + step);
+    }
+    Random random = new Random(steps.size());
+    for (int i = 0; i < 200; i++) {
+      int step = random.nextInt(steps.size());
+      replay.seek(step);
+      assertEquals(steps.get(step), replay.variables(), "step " + step);
+    }
+  }
+
+  /**
+   * This copies the variables after a step in the order they were created, which is the order a
+   * replay gives them in.
+   *
+   * @param state   Variables used by the program
+   * @param program Program being run
+   * @return The variables by name
+   */
+  private static Map<String, Long> variables(State state, Program program) {
+    Map<String, Long> variables = new LinkedHashMap<>();
+    for (int i = 0; i < state.count; i++) {
+      variables.put(program.names[state.order[i]], state.values[state.order[i]]);
+    }
+    return variables;
+  }
+}
@@ -0,0 +1,141 @@
+package barebones;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This does arithmetic on every element of an array a whole vector register at a time, using the
+ * incubating Vector API.
+ *
+ * <p>It is kept apart from the other sources, since it only compiles and loads with
+ * {@code --add-modules jdk.incubator.vector}, and is loaded through reflection when the JVM has
+ * the module. Ints are kept sign extended in longs, so in the int mode each result wraps by
+ * shifting it up 32 bits and back. In the long mode overflow is found with the same sign tests as
+ * {@link Arithmetic}, except for multiplication, which has no vector form of the high half of the
+ * product and is done one element at a time.
+ */
+final class VectorBulk implements Bulk {
+  private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+  private final Bulk rest = new ScalarBulk(); //Used for the elements after the last whole vector
+
+  @Override
+  public boolean add(long[] values, int base, int length, long value, boolean wrap) {
+    LongVector operand = LongVector.broadcast(SPECIES, value);
+    VectorMask<Long> overflowed = SPECIES.maskAll(false);
+    int i = 0;
+    for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+      LongVector element = LongVector.fromArray(SPECIES, values, base + i);
+      LongVector result = element.add(operand);
+      if (wrap) {
+        result = wrap(result);
+      } else {
+        overflowed = overflowed.or(element.lanewise(VectorOperators.XOR, result)
+            .and(operand.lanewise(VectorOperators.XOR, result)).compare(VectorOperators.LT, 0));
+      }
+      result.intoArray(values, base + i);
+    }
+    return rest.add(values, base + i, length - i, value, wrap) | overflowed.anyTrue();
+  }
+
+  @Override
+  public boolean subtract(long[] values, int base, int length, long value, boolean wrap) {
+    LongVector operand = LongVector.broadcast(SPECIES, value);
+    VectorMask<Long> overflowed = SPECIES.maskAll(false);
+    int i = 0;
+    for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+      LongVector element = LongVector.fromArray(SPECIES, values, base + i);
+      LongVector result = element.sub(operand);
+      if (wrap) {
+        result = wrap(result);
+      } else {
+        overflowed = overflowed.or(element.lanewise(VectorOperators.XOR, operand)
+            .and(element.lanewise(VectorOperators.XOR, result)).compare(VectorOperators.LT, 0));
+      }
+      result.intoArray(values, base + i);
+    }
+    return rest.subtract(values, base + i, length - i, value, wrap) | overflowed.anyTrue();
+  }
+
+  @Override
+  public boolean multiply(long[] values, int base, int length, long value, boolean wrap) {
+    if (!wrap) {
+      return rest.multiply(values, base, length, value, false);
+    }
+    //Both values fit in an int, so the product fits in a long before it is wrapped
+    LongVector operand = LongVector.broadcast(SPECIES, value);
+    int i = 0;
+    for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+      wrap(LongVector.fromArray(SPECIES, values, base + i).mul(operand)).intoArray(values, base + i);
+    }
+    return rest.multiply(values, base + i, length - i, value, true);
+  }
+
+  @Override
+  public boolean addArray(long[] values, int base, int other, int length, boolean wrap) {
+    VectorMask<Long> overflowed = SPECIES.maskAll(false);
+    int i = 0;
+    for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+      LongVector element = LongVector.fromArray(SPECIES, values, base + i);
+      LongVector operand = LongVector.fromArray(SPECIES, values, other + i);
+      LongVector result = element.add(operand);
+      if (wrap) {
+        result = wrap(result);
+      } else {
+        overflowed = overflowed.or(element.lanewise(VectorOperators.XOR, result)
+            .and(operand.lanewise(VectorOperators.XOR, result)).compare(VectorOperators.LT, 0));
+      }
+      result.intoArray(values, base + i);
+    }
+    return rest.addArray(values, base + i, other + i, length - i, wrap) | overflowed.anyTrue();
+  }
+
+  @Override
+  public boolean subtractArray(long[] values, int base, int other, int length, boolean wrap) {
+    VectorMask<Long> overflowed = SPECIES.maskAll(false);
+    int i = 0;
+    for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+      LongVector element = LongVector.fromArray(SPECIES, values, base + i);
+      LongVector operand = LongVector.fromArray(SPECIES, values, other + i);
+      LongVector result = element.sub(operand);
+      if (wrap) {
+        result = wrap(result);
+      } else {
+        overflowed = overflowed.or(element.lanewise(VectorOperators.XOR, operand)
+            .and(element.lanewise(VectorOperators.XOR, result)).compare(VectorOperators.LT, 0));
+      }
+      result.intoArray(values, base + i);
+    }
+    return rest.subtractArray(values, base + i, other + i, length - i, wrap) | overflowed.anyTrue();
+  }
+
+  @Override
+  public int count(long[] values, int base, int length, Comparison comparison, long value) {
+    VectorOperators.Comparison test = switch (comparison) {
+      case EQ -> VectorOperators.EQ;
+      case NE -> VectorOperators.NE;
+      case GT -> VectorOperators.GT;
+      case LT -> VectorOperators.LT;
+      case GE -> VectorOperators.GE;
+      case LE -> VectorOperators.LE;
+    };
+    int count = 0;
+    int i = 0;
+    for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+      count += LongVector.fromArray(SPECIES, values, base + i).compare(test, value).trueCount();
+    }
+    return count + rest.count(values, base + i, length - i, comparison, value);
+  }
+
+  /**
+   * This wraps every lane like an int.
+   *
+   * @param vector Results too large for an int
+   * @return The wrapped results
+   */
+  private static LongVector wrap(LongVector vector) {
+    return vector.lanewise(VectorOperators.LSHL, 32).lanewise(VectorOperators.ASHR, 32);
+  }
+}
@@ -0,0 +1,55 @@
+package benchmarks;
+
+import barebones.Program;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This measures how many times a second a program can be parsed, linked and optimised, which is
+ * paid before any engine starts running it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompileBenchmark {
+  @Param({"code", "nested", "branches", "variables"})
+  public String program;
+
+  @Param({"true", "false"})
+  public boolean optimise;
+
+  private List<String> source; //Lines of the program
+
+  /**
+   * This reads the program being measured.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    source = Programs.get(program);
+  }
+
+  /**
+   * This compiles the program once.
+   *
+   * @return The compiled program, so it is not optimised away
+   */
+  @Benchmark
+  public Program compile() {
+    return Program.compile(source, optimise);
+  }
+}
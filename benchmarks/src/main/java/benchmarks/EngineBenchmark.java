@@ -0,0 +1,64 @@
+package benchmarks;
+
+import barebones.Executor;
+import barebones.Options;
+import barebones.Program;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * This measures how many times a second each engine can run a program.
+ * Programs are compiled once in the setup, so only running them is measured, and the variables are
+ * read back as they would be output so no engine can skip work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+  @Param({"interpreter", "bytecode", "tiered"})
+  public String engine;
+
+  @Param({"code", "nested", "branches", "variables"})
+  public String program;
+
+  @Param({"true", "false"})
+  public boolean optimise;
+
+  private Program compiled; //Program being run
+  private Executor executor; //Executor for the engine
+
+  /**
+   * This compiles the program for the engine being measured.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    compiled = Program.compile(Programs.get(program), optimise);
+    executor = new Executor(compiled, Options.parse(new String[]{"--engine=" + engine}));
+  }
+
+  /**
+   * This runs the program once.
+   *
+   * @param blackhole Used to keep the variables alive
+   */
+  @Benchmark
+  public void run(Blackhole blackhole) {
+    barebones.State state = executor.run(); //Named in full, as JMH has its own State
+    blackhole.consume(state.variables(compiled));
+  }
+}
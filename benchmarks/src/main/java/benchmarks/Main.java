@@ -0,0 +1,32 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This is used to run the benchmarks with the allocation rate reported alongside throughput.
+ * Any JMH commandline options can be given, such as a benchmark name or -p engine=tiered.
+ */
+public final class Main {
+  private Main() {
+  }
+
+  /**
+   * This is used to get commandline inputs and start the benchmarks.
+   *
+   * @param args JMH commandline options
+   * @throws CommandLineOptionException An option is not valid
+   * @throws RunnerException            A benchmark failed
+   */
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    new Runner(new OptionsBuilder()
+        .parent(commandLine)
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
@@ -0,0 +1,145 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This holds the bare bones programs which are benchmarked.
+ * Each one stresses a different part of the interpreter, so a change can be checked against the
+ * kind of program it is meant to help.
+ */
+final class Programs {
+  private Programs() {
+  }
+
+  /**
+   * This gets the source of a program by name.
+   *
+   * @param name code, nested, branches or variables
+   * @return The lines of the program
+   */
+  static List<String> get(String name) {
+    return switch (name) {
+      case "code" -> resource("/code.txt");
+      case "nested" -> nested(200);
+      case "branches" -> branches(64, 2000);
+      case "variables" -> variables(4000);
+      default -> throw new IllegalArgumentException("Invalid Program: " + name);
+    };
+  }
+
+  /**
+   * This reads the example program shipped with the interpreter.
+   *
+   * @param path Resource path of the program
+   * @return The lines of the program
+   */
+  private static List<String> resource(String path) {
+    InputStream in = Programs.class.getResourceAsStream(path);
+    if (in == null) {
+      throw new IllegalStateException("Missing resource: " + path);
+    }
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      return reader.lines().toList();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * This makes two nested multiply loops whose body uses mod, so they cannot be summarised and every
+   * iteration is dispatched.
+   *
+   * @param size Times round each loop
+   * @return The lines of the program
+   */
+  private static List<String> nested(int size) {
+    List<String> code = new ArrayList<>();
+    code.add("clear I;");
+    code.add("incr I " + size + ";");
+    code.add("clear A;");
+    code.add("while I not 0 do;");
+    code.add("clear J;");
+    code.add("incr J " + size + ";");
+    code.add("while J not 0 do;");
+    code.add("incr A J;");
+    code.add("mult A 31;");
+    code.add("mod A 1000003;");
+    code.add("decr J 1;");
+    code.add("end;");
+    code.add("decr I 1;");
+    code.add("end;");
+    return code;
+  }
+
+  /**
+   * This makes a loop around a long if and else if chain, so most of the time is spent finding the
+   * section which runs.
+   *
+   * @param arms  Sections in the chain
+   * @param times Times round the loop
+   * @return The lines of the program
+   */
+  private static List<String> branches(int arms, int times) {
+    List<String> code = new ArrayList<>();
+    code.add("clear N;");
+    code.add("incr N " + times + ";");
+    code.add("while N not 0 do;");
+    code.add("clear K;");
+    code.add("incr K N;");
+    code.add("mod K " + arms + ";");
+    for (int arm = 0; arm < arms; arm++) {
+      code.add((arm == 0 ? "if" : "else if") + " K == " + arm + ";");
+      code.add("incr S " + (arm + 1) + ";");
+    }
+    code.add("else;");
+    code.add("clear S;");
+    code.add("endif;");
+    code.add("decr N 1;");
+    code.add("end;");
+    return code;
+  }
+
+  /**
+   * This makes a program which sets thousands of variables, so the cost of creating and outputting
+   * variables shows up.
+   *
+   * @param count Variables to create
+   * @return The lines of the program
+   */
+  private static List<String> variables(int count) {
+    List<String> code = new ArrayList<>();
+    String previous = null;
+    for (int i = 0; i < count; i++) {
+      String name = name(i);
+      code.add("clear " + name + ";");
+      code.add("incr " + name + " " + (i % 100) + ";");
+      if (previous != null) {
+        code.add("incr " + name + " " + previous + ";");
+      }
+      previous = name;
+    }
+    return code;
+  }
+
+  /**
+   * This makes a variable name from a number, since names can only contain letters.
+   *
+   * @param number Number of the variable
+   * @return A name made of letters
+   */
+  private static String name(int number) {
+    StringBuilder name = new StringBuilder("V");
+    do {
+      name.append((char) ('a' + number % 26));
+      number /= 26;
+    } while (number > 0);
+    return name.toString();
+  }
+}